@@ -0,0 +1,372 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/** A char stream over a file that is memory mapped rather than read
+ *  into a char[] up front.  Bytes are decoded a page at a time only
+ *  when the lexer (or a substring() call) touches that page, and only
+ *  a handful of decoded pages are kept around, so heap use does not
+ *  depend on the size of the file.
+ *
+ *  Because most encodings are variable width, a char index can only be
+ *  mapped to a byte offset by decoding everything before it.  We record
+ *  the byte offset at which each page starts as we go, which makes
+ *  rewinding to or seeking into any page already visited cheap.  The
+ *  first seek past the decoded region, or the first call to size(),
+ *  decodes forward to find the target, passing each page through the
+ *  cache once.
+ *
+ *  Char indexes are still ints (see IntStream) so the decoded input
+ *  must fit in 2^31-1 chars; the file itself can be larger than the heap.
+ *
+ *  Call close() when done to release the underlying channel.
+ */
+public class ANTLRMappedFileStream extends ANTLRStringStream {
+	/** How many chars to decode at once */
+	public static final int PAGE_SIZE = 64*1024;
+
+	/** How many decoded pages to keep; a direct mapped cache */
+	public static final int CACHED_PAGES = 4;
+
+	/** How much of the file to map at once */
+	public static final int MAP_WINDOW_SIZE = 64*1024*1024;
+
+	protected String fileName;
+
+	protected RandomAccessFile file;
+	protected FileChannel channel;
+	protected long fileSize;
+	protected CharsetDecoder decoder;
+
+	/** Upper bound on bytes needed to decode PAGE_SIZE chars */
+	protected int maxPageBytes;
+
+	/** The currently mapped region of the file */
+	protected MappedByteBuffer window;
+	protected long windowStart;
+	protected int windowLength;
+
+	/** pageByteStart[k] and pageCharStart[k] are where page k starts in
+	 *  the file and in the char stream.  Valid for k in 0..numKnownPages-1;
+	 *  entry numKnownPages-1 is always the start of the first page we
+	 *  have not decoded yet.
+	 */
+	protected long[] pageByteStart = new long[16];
+	protected int[] pageCharStart = new int[16];
+	protected int numKnownPages = 1;
+
+	/** Set to true once we've decoded the last page; n is then valid */
+	protected boolean sizeKnown = false;
+
+	/** Decoded pages; slot k%CACHED_PAGES holds page cachedPage[slot] */
+	protected char[][] pageCache = new char[CACHED_PAGES][];
+	protected int[] cachedPage = new int[CACHED_PAGES];
+
+	/** The page holding the most recently touched char; a fast path
+	 *  for LA(i) and consume() that avoids the page table entirely.
+	 */
+	protected char[] buf;
+	protected int bufStart = 0;
+	protected int bufEnd = 0;
+
+	public ANTLRMappedFileStream(String fileName) throws IOException {
+		this(fileName, null);
+	}
+
+	public ANTLRMappedFileStream(String fileName, String encoding) throws IOException {
+		this.fileName = fileName;
+		this.name = fileName;
+		load(fileName, encoding);
+	}
+
+	public void load(String fileName, String encoding)
+		throws IOException
+	{
+		if ( fileName==null ) {
+			return;
+		}
+		Charset charset;
+		if ( encoding!=null ) {
+			charset = Charset.forName(encoding);
+		}
+		else {
+			charset = Charset.defaultCharset();
+		}
+		// behave like InputStreamReader does with bad input
+		decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		int bytesPerChar = (int)Math.ceil(charset.newEncoder().maxBytesPerChar());
+		maxPageBytes = PAGE_SIZE * Math.max(bytesPerChar, 1) + 16;
+		for (int i = 0; i < CACHED_PAGES; i++) {
+			cachedPage[i] = -1;
+		}
+		file = new RandomAccessFile(fileName, "r");
+		channel = file.getChannel();
+		fileSize = channel.size();
+	}
+
+	/** Release the file and its mapping; the stream is unusable after
+	 *  this.
+	 */
+	public void close() throws IOException {
+		unmap(window);
+		window = null;
+		buf = null;
+		bufStart = bufEnd = 0;
+		for (int i = 0; i < CACHED_PAGES; i++) {
+			pageCache[i] = null;
+			cachedPage[i] = -1;
+		}
+		if ( file!=null ) {
+			file.close();
+		}
+	}
+
+	/** A mapping normally lives until the buffer is garbage collected,
+	 *  which keeps the file open (and undeletable on Windows).  Unmap it
+	 *  now if the VM lets us; otherwise leave it to the collector.  No
+	 *  other reference to the buffer may be used after this.
+	 */
+	protected static void unmap(MappedByteBuffer buffer) {
+		if ( buffer==null ) {
+			return;
+		}
+		try {
+			Method getCleaner = buffer.getClass().getMethod("cleaner");
+			getCleaner.setAccessible(true);
+			Object cleaner = getCleaner.invoke(buffer);
+			if ( cleaner!=null ) {
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		}
+		catch (Exception e) {
+			// not a VM we know how to unmap on
+		}
+	}
+
+	public void consume() {
+		int c;
+		if ( p>=bufStart && p<bufEnd ) {
+			c = buf[p-bufStart];
+		}
+		else {
+			c = charAt(p);
+			if ( c==CharStream.EOF ) {
+				return;
+			}
+		}
+		charPositionInLine++;
+		if ( c=='\n' ) {
+			line++;
+			charPositionInLine=0;
+		}
+		p++;
+	}
+
+	public int LA(int i) {
+		if ( i==0 ) {
+			return 0; // undefined
+		}
+		if ( i<0 ) {
+			i++; // e.g., translate LA(-1) to use offset i=0; then data[p+0-1]
+			if ( (p+i-1) < 0 ) {
+				return CharStream.EOF; // invalid; no char before first char
+			}
+		}
+		int index = p+i-1;
+		if ( index>=bufStart && index<bufEnd ) {
+			return buf[index-bufStart];
+		}
+		return charAt(index);
+	}
+
+	/** Return the char at index or EOF, making its page the current one */
+	protected int charAt(int index) {
+		if ( index<0 || !loadPageContaining(index) ) {
+			return CharStream.EOF;
+		}
+		return buf[index-bufStart];
+	}
+
+	/** Decoding the whole file is the only way to count the chars in it
+	 *  unless we've already hit the end, so avoid calling this on huge
+	 *  files if you can.
+	 */
+	public int size() {
+		while ( !sizeKnown ) {
+			decodePage(numKnownPages-1);
+		}
+		return n;
+	}
+
+	public String substring(int start, int stop) {
+		StringBuffer text = new StringBuffer(stop-start+1);
+		for (int i = start; i <= stop; i++) {
+			if ( i<bufStart || i>=bufEnd ) {
+				if ( !loadPageContaining(i) ) {
+					break;
+				}
+			}
+			int len = Math.min(stop+1, bufEnd) - i;
+			text.append(buf, i-bufStart, len);
+			i += len-1;
+		}
+		return text.toString();
+	}
+
+	/** There's no char[] to share so this is just substring(), or null
+	 *  if start or stop is past the end.  Unlike a check against size(),
+	 *  this decodes only as far as the later of the two.
+	 */
+	public CharSequence subSequence(int start, int stop) {
+		if ( !loadPageContaining(Math.max(start, stop)) ) {
+			return null;
+		}
+		return substring(start, stop);
+	}
+
+	public String getSourceName() {
+		return fileName;
+	}
+
+	public String toString() {
+		return substring(0, size()-1);
+	}
+
+	/** Make the page holding char index the current page; return false
+	 *  if index is past the end of the input.
+	 */
+	protected boolean loadPageContaining(int index) {
+		// decode forward until we know where index lives; each page
+		// goes straight into the cache so the last one is ready to use
+		while ( index>=pageCharStart[numKnownPages-1] ) {
+			if ( sizeKnown ) {
+				return false;
+			}
+			decodePage(numKnownPages-1);
+		}
+		// binary search for page k such that index in [start(k),start(k+1))
+		int lo = 0;
+		int hi = numKnownPages-2;
+		while ( lo<hi ) {
+			int mid = (lo+hi+1) >>> 1;
+			if ( pageCharStart[mid]<=index ) lo = mid;
+			else hi = mid-1;
+		}
+		int page = lo;
+		int slot = page % CACHED_PAGES;
+		if ( cachedPage[slot]!=page ) {
+			decodePage(page);
+		}
+		buf = pageCache[slot];
+		bufStart = pageCharStart[page];
+		bufEnd = pageCharStart[page+1];
+		return true;
+	}
+
+	/** Decode page k, whose starting offsets must be known, into its
+	 *  cache slot.  The first time we see a page this also records where
+	 *  the next one starts.
+	 */
+	protected void decodePage(int page) {
+		long byteStart = pageByteStart[page];
+		int avail = (int)Math.min(maxPageBytes, fileSize-byteStart);
+		ensureMapped(byteStart, avail);
+		ByteBuffer in = window.duplicate();
+		in.position((int)(byteStart-windowStart));
+		in.limit(in.position()+avail);
+		int slot = page % CACHED_PAGES;
+		if ( pageCache[slot]==null ) {
+			pageCache[slot] = new char[PAGE_SIZE];
+		}
+		else if ( pageCache[slot]==buf ) {
+			bufStart = bufEnd = 0; // about to overwrite the current page
+		}
+		cachedPage[slot] = page;
+		CharBuffer out = CharBuffer.wrap(pageCache[slot]);
+		boolean endOfInput = byteStart+avail==fileSize;
+		decoder.reset();
+		decoder.decode(in, out, endOfInput);
+		int bytesRead = in.position()-(int)(byteStart-windowStart);
+		if ( endOfInput && bytesRead==avail ) {
+			decoder.flush(out);
+		}
+		if ( page==numKnownPages-1 ) {
+			// first time we've seen this page; record where the next starts
+			int charEnd = pageCharStart[page]+out.position();
+			long byteEnd = byteStart+bytesRead;
+			addPage(byteEnd, charEnd);
+			if ( byteEnd==fileSize ) {
+				sizeKnown = true;
+				n = charEnd;
+			}
+		}
+	}
+
+	protected void addPage(long byteStart, int charStart) {
+		if ( numKnownPages>=pageByteStart.length ) {
+			long[] newBytes = new long[pageByteStart.length*2];
+			System.arraycopy(pageByteStart, 0, newBytes, 0, pageByteStart.length);
+			pageByteStart = newBytes;
+			int[] newChars = new int[pageCharStart.length*2];
+			System.arraycopy(pageCharStart, 0, newChars, 0, pageCharStart.length);
+			pageCharStart = newChars;
+		}
+		pageByteStart[numKnownPages] = byteStart;
+		pageCharStart[numKnownPages] = charStart;
+		numKnownPages++;
+	}
+
+	/** Make sure bytes start..start+len-1 of the file are mapped */
+	protected void ensureMapped(long start, int len) {
+		if ( window!=null && start>=windowStart &&
+			 start+len<=windowStart+windowLength )
+		{
+			return;
+		}
+		windowStart = start;
+		windowLength = (int)Math.min(Math.max(MAP_WINDOW_SIZE, len), fileSize-start);
+		try {
+			window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+		}
+		catch (IOException ioe) {
+			throw new RuntimeException("can't map "+fileName+" at offset "+start, ioe);
+		}
+	}
+}
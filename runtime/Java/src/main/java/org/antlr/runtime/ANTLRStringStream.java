@@ -27,6 +27,8 @@
  */
 package org.antlr.runtime;
 
+import org.antlr.runtime.misc.CharArraySlice;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -206,6 +208,16 @@ public class ANTLRStringStream implements CharStream {
 		return new String(data,start,stop-start+1);
 	}
 
+	/** Like substring() but the result shares the data array, so
+	 *  nothing is copied.  Return null if start or stop is past the end.
+	 */
+	public CharSequence subSequence(int start, int stop) {
+		if ( start>=n || stop>=n ) {
+			return null;
+		}
+		return new CharArraySlice(data,start,stop-start+1);
+	}
+
 	public int getLine() {
 		return line;
 	}
@@ -0,0 +1,395 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A char stream that lexes UTF-8 (and so ASCII) bytes directly rather
+ *  than decoding them into a char[] first as ANTLRInputStream does.  That
+ *  halves the memory for ASCII input and skips a whole decode pass.
+ *  LA(i) returns an ASCII byte as is and decodes a multi-byte sequence
+ *  on the fly.
+ *
+ *  Indexes are byte offsets, not char offsets: index(), seek(),
+ *  substring() and size() and hence token start/stop all count bytes.
+ *  Line and char position within the line count chars so error
+ *  messages look the same as with any other stream.
+ *
+ *  A character outside the BMP (4 byte sequence) comes back from LA() as
+ *  a UTF-16 surrogate pair, just as ANTLRInputStream would give it, since
+ *  lexers and their DFAs work on 16 bit chars.  The high half has the
+ *  index of the sequence's first byte and the low half the next index,
+ *  so the pair still spans the sequence's 4 bytes.  Malformed bytes,
+ *  overlong forms and encoded surrogates come back one byte at a time
+ *  as U+FFFD.
+ */
+public class ANTLRUTF8Stream implements CharStream {
+	public static final int REPLACEMENT_CHAR = 0xFFFD;
+
+	/** The UTF-8 bytes being scanned */
+	protected byte[] data;
+
+	/** How many bytes are actually in the buffer */
+	protected int n;
+
+	/** 0..n-1 index into data of first byte of next char */
+	protected int p=0;
+
+	/** line number 1..n within the input */
+	protected int line = 1;
+
+	/** The index of the character relative to the beginning of the line 0..n-1 */
+	protected int charPositionInLine = 0;
+
+	/** tracks how deep mark() calls are nested */
+	protected int markDepth = 0;
+
+	/** A list of CharStreamState objects that tracks the stream state
+	 *  values line, charPositionInLine, and p that can change as you
+	 *  move through the input stream.  Indexed from 1..markDepth.
+	 *  A null is kept @ index 0.  Create upon first call to mark().
+	 */
+	protected List markers;
+
+	/** Track the last mark() call result value for use in rewind(). */
+	protected int lastMarker;
+
+	/** What is name or source of this char stream? */
+	public String name;
+
+	public ANTLRUTF8Stream() {
+	}
+
+	/** This is the preferred constructor as no data is copied */
+	public ANTLRUTF8Stream(byte[] data, int numberOfActualBytesInArray) {
+		this.data = data;
+		this.n = numberOfActualBytesInArray;
+	}
+
+	public ANTLRUTF8Stream(byte[] data) {
+		this(data, data.length);
+	}
+
+	/** Use the remaining bytes of buf; the array is shared if we can */
+	public ANTLRUTF8Stream(ByteBuffer buf) {
+		if ( buf.hasArray() && buf.arrayOffset()+buf.position()==0 ) {
+			this.data = buf.array();
+			this.n = buf.limit();
+		}
+		else {
+			this.data = new byte[buf.remaining()];
+			buf.duplicate().get(data);
+			this.n = data.length;
+		}
+	}
+
+	public ANTLRUTF8Stream(InputStream input) throws IOException {
+		load(input);
+	}
+
+	/** Vacuum all bytes from input */
+	public void load(InputStream input) throws IOException {
+		if ( input==null ) {
+			return;
+		}
+		try {
+			data = new byte[ANTLRReaderStream.INITIAL_BUFFER_SIZE];
+			int numRead = 0;
+			n = 0;
+			while ( (numRead=input.read(data, n, data.length-n))!=-1 ) {
+				n += numRead;
+				if ( n==data.length ) {
+					byte[] newdata = new byte[data.length*2]; // resize
+					System.arraycopy(data, 0, newdata, 0, n);
+					data = newdata;
+				}
+			}
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	/** Reset the stream so that it's in the same state it was
+	 *  when the object was created *except* the data array is not
+	 *  touched.
+	 */
+	public void reset() {
+		p = 0;
+		line = 1;
+		charPositionInLine = 0;
+		markDepth = 0;
+	}
+
+	public void consume() {
+		if ( p < n ) {
+			byte b = data[p];
+			charPositionInLine++;
+			if ( b=='\n' ) {
+				line++;
+				charPositionInLine=0;
+			}
+			p += b>=0 ? 1 : charLength(p);
+		}
+	}
+
+	public int LA(int i) {
+		if ( i==1 ) { // the common case; inline ASCII
+			if ( p>=n ) {
+				return CharStream.EOF;
+			}
+			byte b = data[p];
+			return b>=0 ? b : decode(p);
+		}
+		if ( i==0 ) {
+			return 0; // undefined
+		}
+		int q = p;
+		if ( i<0 ) {
+			for (; i<0; i++) {
+				if ( q<=0 ) {
+					return CharStream.EOF; // invalid; no char before first char
+				}
+				q = previous(q);
+			}
+			return decode(q);
+		}
+		for (; i>1; i--) {
+			if ( q>=n ) {
+				return CharStream.EOF;
+			}
+			q += charLength(q);
+		}
+		if ( q>=n ) {
+			return CharStream.EOF;
+		}
+		return decode(q);
+	}
+
+	public int LT(int i) {
+		return LA(i);
+	}
+
+	/** How many bytes make up the sequence starting at q?  An invalid,
+	 *  truncated or overlong sequence, or one that encodes a surrogate or
+	 *  a code point past U+10FFFF, counts as one byte.
+	 */
+	protected int sequenceLength(int q) {
+		int b = data[q] & 0xFF;
+		int len;
+		// second byte range; narrower after E0, ED, F0 and F4
+		int lo = 0x80;
+		int hi = 0xBF;
+		if ( b<0x80 ) return 1;
+		else if ( b>=0xC2 && b<=0xDF ) len = 2;
+		else if ( b>=0xE0 && b<=0xEF ) {
+			len = 3;
+			if ( b==0xE0 ) lo = 0xA0;      // overlong
+			else if ( b==0xED ) hi = 0x9F; // surrogates
+		}
+		else if ( b>=0xF0 && b<=0xF4 ) {
+			len = 4;
+			if ( b==0xF0 ) lo = 0x90;      // overlong
+			else if ( b==0xF4 ) hi = 0x8F; // past U+10FFFF
+		}
+		else return 1;
+		if ( q+len>n ) return 1;
+		int b2 = data[q+1] & 0xFF;
+		if ( b2<lo || b2>hi ) return 1;
+		for (int i = 2; i < len; i++) {
+			if ( (data[q+i] & 0xC0)!=0x80 ) return 1;
+		}
+		return len;
+	}
+
+	/** Is q the low surrogate half of a 4 byte sequence starting at q-1? */
+	protected boolean isLowSurrogate(int q) {
+		return q>0 && q<n && (data[q] & 0xC0)==0x80 && sequenceLength(q-1)==4;
+	}
+
+	/** How far to move from index q to the next char: 1 from the high
+	 *  half of a 4 byte sequence to its low half, 3 from the low half to
+	 *  the next sequence, else the length of the sequence at q.
+	 */
+	protected int charLength(int q) {
+		int len = sequenceLength(q);
+		if ( len==4 ) return 1;
+		if ( len==1 && isLowSurrogate(q) ) return 3;
+		return len;
+	}
+
+	/** Decode the char at index q */
+	protected int decode(int q) {
+		int b = data[q] & 0xFF;
+		if ( b<0x80 ) {
+			return b;
+		}
+		switch ( sequenceLength(q) ) {
+			case 2 :
+				return ((b & 0x1F) << 6) | (data[q+1] & 0x3F);
+			case 3 :
+				return ((b & 0x0F) << 12) | ((data[q+1] & 0x3F) << 6) |
+					   (data[q+2] & 0x3F);
+			case 4 :
+				return 0xD800 + ((decodeSupplementary(q)-0x10000) >> 10);
+		}
+		if ( isLowSurrogate(q) ) {
+			return 0xDC00 + ((decodeSupplementary(q-1)-0x10000) & 0x3FF);
+		}
+		return REPLACEMENT_CHAR;
+	}
+
+	/** Decode the valid 4 byte sequence starting at q */
+	protected int decodeSupplementary(int q) {
+		return ((data[q] & 0x07) << 18) | ((data[q+1] & 0x3F) << 12) |
+			   ((data[q+2] & 0x3F) << 6) | (data[q+3] & 0x3F);
+	}
+
+	/** Return the index of the char before the one at q */
+	protected int previous(int q) {
+		if ( isLowSurrogate(q) ) {
+			return q-1; // the high half
+		}
+		// back up over at most 3 continuation bytes to a lead byte whose
+		// sequence ends right at q; otherwise it's a lone bad byte
+		for (int back = 2; back <= 4 && q-back >= 0; back++) {
+			if ( (data[q-back+1] & 0xC0)!=0x80 ) break;
+			if ( (data[q-back] & 0xC0)!=0x80 ) {
+				if ( sequenceLength(q-back)==back ) {
+					return back==4 ? q-3 : q-back; // low half of a pair
+				}
+				break;
+			}
+		}
+		return q-1;
+	}
+
+	/** Return the current input symbol index 0..n where n indicates the
+	 *  last symbol has been read.  This is the byte offset of the char
+	 *  to be returned from LA(1).
+	 */
+	public int index() {
+		return p;
+	}
+
+	/** The number of bytes, not chars, in the input */
+	public int size() {
+		return n;
+	}
+
+	public int mark() {
+		if ( markers==null ) {
+			markers = new ArrayList();
+			markers.add(null); // depth 0 means no backtracking, leave blank
+		}
+		markDepth++;
+		CharStreamState state = null;
+		if ( markDepth>=markers.size() ) {
+			state = new CharStreamState();
+			markers.add(state);
+		}
+		else {
+			state = (CharStreamState)markers.get(markDepth);
+		}
+		state.p = p;
+		state.line = line;
+		state.charPositionInLine = charPositionInLine;
+		lastMarker = markDepth;
+		return markDepth;
+	}
+
+	public void rewind(int m) {
+		CharStreamState state = (CharStreamState)markers.get(m);
+		// restore stream state
+		seek(state.p);
+		line = state.line;
+		charPositionInLine = state.charPositionInLine;
+		release(m);
+	}
+
+	public void rewind() {
+		rewind(lastMarker);
+	}
+
+	public void release(int marker) {
+		// unwind any other markers made after m and release m
+		markDepth = marker;
+		// release this marker
+		markDepth--;
+	}
+
+	/** consume() ahead until p==index; can't just set p=index as we must
+	 *  update line and charPositionInLine.  index must be at the start of
+	 *  a char.
+	 */
+	public void seek(int index) {
+		if ( index<=p ) {
+			p = index; // just jump; don't update stream state (line, ...)
+			return;
+		}
+		// seek forward, consume until p hits index
+		while ( p<index && p<n ) {
+			consume();
+		}
+	}
+
+	/** Decode bytes start..stop, which should be whole chars */
+	public String substring(int start, int stop) {
+		try {
+			return new String(data,start,stop-start+1,"UTF-8");
+		}
+		catch (UnsupportedEncodingException uee) {
+			throw new RuntimeException(uee); // every JVM must have UTF-8
+		}
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public int getCharPositionInLine() {
+		return charPositionInLine;
+	}
+
+	public void setLine(int line) {
+		this.line = line;
+	}
+
+	public void setCharPositionInLine(int pos) {
+		this.charPositionInLine = pos;
+	}
+
+	public String getSourceName() {
+		return name;
+	}
+
+	public String toString() { return substring(0, n-1); }
+}
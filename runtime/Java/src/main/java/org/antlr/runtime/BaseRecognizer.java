@@ -27,10 +27,12 @@
  */
 package org.antlr.runtime;
 
+import org.antlr.runtime.misc.IntIntHashMap;
+
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 
 /** A generic recognizer that can handle recognizers generated from
  *  lexer, parser, and tree grammars.  This is all the parsing
@@ -56,6 +58,46 @@ public abstract class BaseRecognizer {
 	 */
 	protected RecognizerSharedState state;
 
+	/** Fires deadlines for all recognizers; a daemon thread created the
+	 *  first time someone sets a deadline.
+	 */
+	protected static Timer deadlineTimer;
+
+	/** Our pending deadline, if any */
+	protected DeadlineTask deadline;
+
+	/** Size of the prediction cache every DFA decision of ours uses; 0
+	 *  leaves them alone.  See setPredictionCacheSize().
+	 */
+	protected int predictionCacheSize = 0;
+
+	/** The caches our DFAs made, so we can report totals */
+	protected List predictionCaches;
+
+	/** Cancels a recognizer when it fires.  Drops its reference to the
+	 *  state when cleared so a dead task doesn't hold onto memo tables
+	 *  until it would have fired.
+	 */
+	protected static class DeadlineTask extends TimerTask {
+		protected volatile RecognizerSharedState state;
+
+		public DeadlineTask(RecognizerSharedState state) {
+			this.state = state;
+		}
+
+		public void run() {
+			RecognizerSharedState s = state;
+			if ( s!=null ) {
+				s.cancelled = true;
+			}
+		}
+
+		public boolean cancel() {
+			state = null;
+			return super.cancel();
+		}
+	}
+
 	public BaseRecognizer() {
 		state = new RecognizerSharedState();
 	}
@@ -67,8 +109,23 @@ public abstract class BaseRecognizer {
 		this.state = state;
 	}
 
-	/** reset the parser's state; subclasses must rewinds the input stream */
+	/** reset the parser's state; subclasses must rewinds the input stream.
+	 *  Nothing is reallocated so a recognizer can be reused for many
+	 *  inputs; see RecognizerPool.
+	 */
 	public void reset() {
+		clearDeadline(); // else it could cancel the next parse
+		resetParseState();
+		if ( state!=null ) {
+			state.cancelled = false;
+		}
+	}
+
+	/** Wipe error recovery, backtracking and memos, but not what says
+	 *  when to stop: state.cancelled, state.workBudget and any deadline.
+	 *  TreeFilter does this between the subtrees it applies rules to.
+	 */
+	protected void resetParseState() {
 		// wack everything related to error recovery
 		if ( state==null ) {
 			return; // no shared state work to do
@@ -80,9 +137,36 @@ public abstract class BaseRecognizer {
 		state.syntaxErrors = 0;
 		// wack everything related to backtracking and memoization
 		state.backtracking = 0;
-		for (int i = 0; state.ruleMemo!=null && i < state.ruleMemo.length; i++) { // wipe cache
-			state.ruleMemo[i] = null;
+		// wipe caches but keep their tables so reusing a recognizer is cheap
+		for (int i = 0; state.ruleMemoTables!=null && i < state.ruleMemoTables.length; i++) {
+			if ( state.ruleMemoTables[i]!=null ) {
+				state.ruleMemoTables[i].clear();
+			}
 		}
+		for (int i = 0; state.synpredMemo!=null && i < state.synpredMemo.length; i++) {
+			if ( state.synpredMemo[i]!=null ) {
+				state.synpredMemo[i].clear();
+			}
+		}
+		state.ruleMemoCommitIndex = 0;
+	}
+
+	/** Run with s from now on, taking along state.cancelled,
+	 *  state.workBudget and any pending deadline so cancel(), a deadline
+	 *  or the budget still stops us.
+	 */
+	protected void switchState(RecognizerSharedState s) {
+		if ( s==state ) {
+			return;
+		}
+		if ( deadline!=null ) {
+			deadline.state = s;
+		}
+		s.workBudget = state.workBudget;
+		if ( state.cancelled ) { // after moving the deadline so we can't miss it
+			s.cancelled = true;
+		}
+		state = s;
 	}
 
 
@@ -786,20 +870,26 @@ public abstract class BaseRecognizer {
 	 *  start index before, then return where the rule stopped parsing.
 	 *  It returns the index of the last token matched by the rule.
 	 *
-	 *  For now we use a hashtable and just the slow Object-based one.
-	 *  Later, we can make a special one for ints and also one that
-	 *  tosses out data after we commit past input position i.
+	 *  Each rule has an int to int hashtable; see commitMemoization()
+	 *  to toss out data once we can't backtrack past input position i.
 	 */
 	public int getRuleMemoization(int ruleIndex, int ruleStartIndex) {
-		if ( state.ruleMemo[ruleIndex]==null ) {
-			state.ruleMemo[ruleIndex] = new HashMap();
+		IntIntHashMap[] tables = getRuleMemoTables();
+		if ( tables[ruleIndex]==null ) {
+			tables[ruleIndex] = new IntIntHashMap();
 		}
-		Integer stopIndexI =
-			(Integer)state.ruleMemo[ruleIndex].get(new Integer(ruleStartIndex));
-		if ( stopIndexI==null ) {
-			return MEMO_RULE_UNKNOWN;
+		return tables[ruleIndex].get(ruleStartIndex, MEMO_RULE_UNKNOWN);
+	}
+
+	/** Return state.ruleMemoTables.  Parsers generated by older versions
+	 *  of ANTLR allocate the Map[] state.ruleMemo instead, so make tables
+	 *  of the same size from that.
+	 */
+	protected IntIntHashMap[] getRuleMemoTables() {
+		if ( state.ruleMemoTables==null && state.ruleMemo!=null ) {
+			state.ruleMemoTables = new IntIntHashMap[state.ruleMemo.length];
 		}
-		return stopIndexI.intValue();
+		return state.ruleMemoTables;
 	}
 
 	/** Has this rule already parsed input at the current index in the
@@ -828,24 +918,172 @@ public abstract class BaseRecognizer {
 	}
 
 	/** Record whether or not this rule parsed the input at this position
-	 *  successfully.  Use a standard java hashtable for now.
+	 *  successfully.  Nothing is recorded for input we've committed past.
 	 */
 	public void memoize(IntStream input,
 						int ruleIndex,
 						int ruleStartIndex)
 	{
 		int stopTokenIndex = state.failed?MEMO_RULE_FAILED:input.index()-1;
-		if ( state.ruleMemo==null ) {
+		IntIntHashMap[] tables = getRuleMemoTables();
+		if ( tables==null ) {
 			System.err.println("!!!!!!!!! memo array is null for "+ getGrammarFileName());
 		}
-		if ( ruleIndex >= state.ruleMemo.length ) {
-			System.err.println("!!!!!!!!! memo size is "+state.ruleMemo.length+", but rule index is "+ruleIndex);
+		if ( ruleIndex >= tables.length ) {
+			System.err.println("!!!!!!!!! memo size is "+tables.length+", but rule index is "+ruleIndex);
+		}
+		if ( tables[ruleIndex]!=null &&
+			 ruleStartIndex>=state.ruleMemoCommitIndex )
+		{
+			tables[ruleIndex].put(ruleStartIndex, stopTokenIndex);
+			if ( input instanceof MemoListener ) {
+				((MemoListener)input).memoized(ruleIndex, ruleStartIndex);
+			}
+		}
+	}
+
+	/** Promise that we'll never backtrack to a token before tokenIndex,
+	 *  such as after matching a top-level statement, so that memoized
+	 *  results for rules starting before it can be thrown out.  Without
+	 *  this, a memoizing parser holds onto results for the whole input.
+	 */
+	public void commitMemoization(int tokenIndex) {
+		if ( tokenIndex<=state.ruleMemoCommitIndex ) {
+			return;
+		}
+		state.ruleMemoCommitIndex = tokenIndex;
+		IntIntHashMap[] tables = getRuleMemoTables();
+		for (int i = 0; tables!=null && i < tables.length; i++) {
+			if ( tables[i]!=null ) {
+				tables[i].removeKeysBelow(tokenIndex);
+			}
+		}
+		for (int i = 0; state.synpredMemo!=null && i < state.synpredMemo.length; i++) {
+			if ( state.synpredMemo[i]!=null ) {
+				state.synpredMemo[i].removeKeysBelow(tokenIndex);
+			}
+		}
+	}
+
+	/** Has syntactic predicate synpredIndex (its rule index) been
+	 *  evaluated at input index startIndex?  Return 1 if it matched,
+	 *  0 if it failed, or MEMO_RULE_UNKNOWN.  Generated synpred methods
+	 *  check this so that decisions sharing a predicate don't backtrack
+	 *  over the same input twice.
+	 */
+	public int getSynpredMemoization(int synpredIndex, int startIndex) {
+		if ( state.synpredMemo==null || synpredIndex>=state.synpredMemo.length ||
+			 state.synpredMemo[synpredIndex]==null )
+		{
+			return MEMO_RULE_UNKNOWN;
+		}
+		return state.synpredMemo[synpredIndex].get(startIndex, MEMO_RULE_UNKNOWN);
+	}
+
+	/** Record the result of a syntactic predicate at startIndex. */
+	public void memoizeSynpred(int synpredIndex, int startIndex, boolean success) {
+		if ( startIndex<state.ruleMemoCommitIndex ) {
+			return;
+		}
+		if ( state.synpredMemo==null || synpredIndex>=state.synpredMemo.length ) {
+			IntIntHashMap[] memo = new IntIntHashMap[synpredIndex+1];
+			if ( state.synpredMemo!=null ) {
+				System.arraycopy(state.synpredMemo, 0, memo, 0, state.synpredMemo.length);
+			}
+			state.synpredMemo = memo;
+		}
+		if ( state.synpredMemo[synpredIndex]==null ) {
+			state.synpredMemo[synpredIndex] = new IntIntHashMap();
+		}
+		state.synpredMemo[synpredIndex].put(startIndex, success ? 1 : 0);
+	}
+
+	/** Charge units of work against state.workBudget; throw
+	 *  WorkBudgetExceededException if that leaves it negative.
+	 */
+	public void spendWork(IntStream input, int units) {
+		state.workBudget -= units;
+		if ( state.workBudget<0 ) {
+			throw new WorkBudgetExceededException(input.index());
+		}
+	}
+
+	/** Ask the recognizer to stop; safe to call from any thread.  It
+	 *  throws ParseCancelledException at its next rule or loop iteration.
+	 */
+	public void cancel() {
+		state.cancelled = true;
+	}
+
+	/** Cancel the recognizer if it's still running timeoutMillis from
+	 *  now.  Replaces any previous deadline.  Generated code only polls
+	 *  state.cancelled so a deadline costs nothing per rule.
+	 */
+	public void setDeadline(long timeoutMillis) {
+		clearDeadline();
+		deadline = new DeadlineTask(state);
+		getDeadlineTimer().schedule(deadline, timeoutMillis);
+	}
+
+	/** Call when done parsing so a pending deadline doesn't fire later */
+	public void clearDeadline() {
+		if ( deadline!=null ) {
+			deadline.cancel();
+			deadline = null;
 		}
-		if ( state.ruleMemo[ruleIndex]!=null ) {
-			state.ruleMemo[ruleIndex].put(
-				new Integer(ruleStartIndex), new Integer(stopTokenIndex)
-			);
+	}
+
+	protected static synchronized Timer getDeadlineTimer() {
+		if ( deadlineTimer==null ) {
+			deadlineTimer = new Timer("ANTLR deadlines", true);
 		}
+		return deadlineTimer;
+	}
+
+	/** Generated code calls this once it sees state.cancelled */
+	public void throwCancelled(IntStream input) {
+		throw new ParseCancelledException(input.index());
+	}
+
+	/** Cache predictions in every DFA decision of this recognizer, each
+	 *  in a table of the given size (a power of 2); 0 turns them off.
+	 *  Takes effect at each DFA's next prediction.  DFAs with predicates
+	 *  never cache; see DFA.setPredictionCacheSize().  Compare
+	 *  getPredictionCacheHits() and getPredictionCacheMisses() to see if
+	 *  it helps on your grammar.
+	 */
+	public void setPredictionCacheSize(int size) {
+		predictionCacheSize = size;
+	}
+
+	public int getPredictionCacheSize() {
+		return predictionCacheSize;
+	}
+
+	/** DFAs call this as they make a cache so we can total them */
+	public void addPredictionCache(PredictionCache cache) {
+		if ( predictionCaches==null ) {
+			predictionCaches = new ArrayList();
+		}
+		predictionCaches.add(cache);
+	}
+
+	/** Hits over all our DFAs' caches since they were made */
+	public long getPredictionCacheHits() {
+		long n = 0;
+		for (int i = 0; predictionCaches!=null && i < predictionCaches.size(); i++) {
+			n += ((PredictionCache)predictionCaches.get(i)).getHits();
+		}
+		return n;
+	}
+
+	/** Misses over all our DFAs' caches since they were made */
+	public long getPredictionCacheMisses() {
+		long n = 0;
+		for (int i = 0; predictionCaches!=null && i < predictionCaches.size(); i++) {
+			n += ((PredictionCache)predictionCaches.get(i)).getMisses();
+		}
+		return n;
 	}
 
 	/** return how many rule/input-index pairs there are in total.
@@ -853,8 +1091,8 @@ public abstract class BaseRecognizer {
 	 */
 	public int getRuleMemoizationCacheSize() {
 		int n = 0;
-		for (int i = 0; state.ruleMemo!=null && i < state.ruleMemo.length; i++) {
-			Map ruleMap = state.ruleMemo[i];
+		for (int i = 0; state.ruleMemoTables!=null && i < state.ruleMemoTables.length; i++) {
+			IntIntHashMap ruleMap = state.ruleMemoTables[i];
 			if ( ruleMap!=null ) {
 				n += ruleMap.size(); // how many input indexes are recorded?
 			}
@@ -0,0 +1,307 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.util.NoSuchElementException;
+
+/** A channel-aware token stream like CommonTokenStream that does not hold
+ *  onto every token for the whole parse.  It buffers tokens in a window
+ *  that starts at the oldest token anybody can still reach: the oldest
+ *  live marker (so backtracking and DFA prediction work as usual) or the
+ *  lookBehind'th on-channel token before the current one, whichever is
+ *  earlier.  Everything before that is thrown away the next time the
+ *  buffer fills up, so memory is proportional to how far the parser
+ *  backtracks rather than to the size of the input.
+ *
+ *  get(i), toString(start,stop) and LT(-k) work as long as the tokens
+ *  involved are still in the window; beyond that they throw
+ *  NoSuchElementException.  That means $text on a rule that spans more
+ *  tokens than the window holds won't work unless the rule is being
+ *  backtracked over (i.e., the start is marked).  Bump lookBehind if your
+ *  actions need to see further back.
+ *
+ *  size() is the number of tokens pulled from the source so far.
+ *
+ *  @see CommonTokenStream
+ *  @see UnbufferedTokenStream
+ */
+public class BoundedTokenStream implements TokenStream {
+	public static final int DEFAULT_LOOK_BEHIND = 4;
+	public static final int INITIAL_BUFFER_SIZE = 100;
+
+	protected TokenSource tokenSource;
+
+	/** Skip tokens on any channel but this one; this is how we skip whitespace... */
+	protected int channel = Token.DEFAULT_CHANNEL;
+
+	/** How many on-channel tokens before LT(1) must stay available */
+	protected int lookBehind = DEFAULT_LOOK_BEHIND;
+
+	/** The window of tokens; tokens[0] is token index offset */
+	protected Token[] tokens = new Token[INITIAL_BUFFER_SIZE];
+
+	/** How many tokens of the window are valid */
+	protected int n = 0;
+
+	/** Absolute token index of tokens[0] */
+	protected int offset = 0;
+
+	/** Absolute index of the current token (LT(1)); -1 means we need to
+	 *  initialize with the first token.
+	 */
+	protected int p = -1;
+
+	protected int range = -1; // how deep have we gone?
+
+	/** Stack of live markers; these are absolute token indexes */
+	protected int[] markers = new int[8];
+	protected int markDepth = 0;
+
+	/** Track the last mark() call result value for use in rewind(). */
+	protected int lastMarker;
+
+	public BoundedTokenStream(TokenSource tokenSource) {
+		this.tokenSource = tokenSource;
+	}
+
+	public BoundedTokenStream(TokenSource tokenSource, int channel) {
+		this(tokenSource);
+		this.channel = channel;
+	}
+
+	public BoundedTokenStream(TokenSource tokenSource, int channel, int lookBehind) {
+		this(tokenSource, channel);
+		this.lookBehind = lookBehind;
+	}
+
+	public TokenSource getTokenSource() { return tokenSource; }
+
+	/** Reset this token stream by setting its token source. */
+	public void setTokenSource(TokenSource tokenSource) {
+		this.tokenSource = tokenSource;
+		for (int i = 0; i < n; i++) tokens[i] = null;
+		n = 0;
+		offset = 0;
+		p = -1;
+		range = -1;
+		markDepth = 0;
+	}
+
+	public int index() { return p; }
+
+	public int range() { return range; }
+
+	/** The number of tokens pulled from the token source so far */
+	public int size() { return offset + n; }
+
+	public int mark() {
+		if ( p == -1 ) setup();
+		if ( markDepth==markers.length ) {
+			int[] newMarkers = new int[markers.length*2];
+			System.arraycopy(markers, 0, newMarkers, 0, markers.length);
+			markers = newMarkers;
+		}
+		markers[markDepth++] = p;
+		lastMarker = p;
+		return lastMarker;
+	}
+
+	/** Pop marker and any markers created after it.  Markers are token
+	 *  indexes, so find the most recent one with this value.
+	 */
+	public void release(int marker) {
+		for (int i = markDepth-1; i >= 0; i--) {
+			if ( markers[i]==marker ) {
+				markDepth = i;
+				return;
+			}
+		}
+	}
+
+	public void rewind(int marker) {
+		seek(marker);
+		release(marker);
+	}
+
+	public void rewind() {
+		seek(lastMarker);
+	}
+
+	public void seek(int index) {
+		if ( index<offset ) {
+			throw new NoSuchElementException("can't seek to token index "+index+
+				"; tokens before "+offset+" have been discarded");
+		}
+		p = index;
+	}
+
+	/** Move the input pointer to the next on-channel token. */
+	public void consume() {
+		if ( p == -1 ) setup();
+		if ( token(p).getType()==Token.EOF ) return;
+		p = skipOffTokenChannels(p+1);
+	}
+
+	public int LA(int i) { return LT(i).getType(); }
+
+	public Token LT(int k) {
+		if ( p == -1 ) setup();
+		if ( k == 0 ) return null;
+		if ( k < 0 ) return LB(-k);
+		int i = p;
+		int n = 1; // we know tokens[p] is a good one
+		// find k good tokens
+		while ( n<k && token(i).getType()!=Token.EOF ) {
+			// skip off-channel tokens
+			i = skipOffTokenChannels(i+1);
+			n++;
+		}
+		if ( i>range ) range = i;
+		return token(i);
+	}
+
+	protected Token LB(int k) {
+		if ( p == -1 ) setup();
+		int i = p;
+		// find k good tokens looking backwards
+		for (int n = 1; n <= k; n++) {
+			i--;
+			while ( i>=offset && token(i).getChannel()!=channel ) {
+				i--;
+			}
+			if ( i<offset ) {
+				if ( offset==0 ) return null;
+				throw new NoSuchElementException("can't look backwards "+k+
+					" tokens; tokens before "+offset+" have been discarded");
+			}
+		}
+		return token(i);
+	}
+
+	public Token get(int i) {
+		if ( i<offset || i>=offset+n ) {
+			throw new NoSuchElementException("token index "+i+" out of range "+offset+".."+(offset+n-1));
+		}
+		return tokens[i-offset];
+	}
+
+	public String getSourceName() { return tokenSource.getSourceName(); }
+
+	public String toString(int start, int stop) {
+		if ( start<0 || stop<0 ) return null;
+		if ( p == -1 ) setup();
+		if ( stop>=offset+n ) stop = offset+n-1;
+		StringBuffer buf = new StringBuffer();
+		for (int i = start; i <= stop; i++) {
+			Token t = get(i);
+			if ( t.getType()==Token.EOF ) break;
+			buf.append(t.getText());
+		}
+		return buf.toString();
+	}
+
+	public String toString(Token start, Token stop) {
+		if ( start!=null && stop!=null ) {
+			return toString(start.getTokenIndex(), stop.getTokenIndex());
+		}
+		return null;
+	}
+
+	/** Return token at absolute index i, which must be at or after the
+	 *  start of the window; fetch tokens as needed.  Past EOF, return EOF.
+	 */
+	protected Token token(int i) {
+		sync(i);
+		if ( i-offset >= n ) {
+			return tokens[n-1]; // EOF must be last token
+		}
+		return tokens[i-offset];
+	}
+
+	/** Make sure index i in tokens has a token unless we've hit EOF */
+	protected void sync(int i) {
+		while ( i >= offset+n ) {
+			if ( n>0 && tokens[n-1].getType()==Token.EOF ) return;
+			fetch();
+		}
+	}
+
+	/** Add one token to the end of the window */
+	protected void fetch() {
+		if ( n==tokens.length ) {
+			slide();
+		}
+		if ( n==tokens.length ) {
+			Token[] newTokens = new Token[tokens.length*2];
+			System.arraycopy(tokens, 0, newTokens, 0, n);
+			tokens = newTokens;
+		}
+		Token t = tokenSource.nextToken();
+		t.setTokenIndex(offset+n);
+		tokens[n++] = t;
+	}
+
+	/** Throw away tokens nobody can reach anymore: those before the
+	 *  lookBehind window of the oldest live marker or of the current
+	 *  token.  A rewind must find the same lookbehind it left.
+	 */
+	protected void slide() {
+		if ( p == -1 ) return;
+		int keep = p;
+		for (int i = 0; i < markDepth; i++) {
+			if ( markers[i]<keep ) keep = markers[i];
+		}
+		for (int found = 0; found<lookBehind && keep>offset; ) {
+			keep--;
+			if ( tokens[keep-offset].getChannel()==channel ) found++;
+		}
+		int drop = keep - offset;
+		if ( drop<=0 ) return;
+		System.arraycopy(tokens, drop, tokens, 0, n-drop);
+		for (int i = n-drop; i < n; i++) tokens[i] = null;
+		n -= drop;
+		offset = keep;
+	}
+
+	/** Given a starting index, return the index of the first on-channel
+	 *  token.
+	 */
+	protected int skipOffTokenChannels(int i) {
+		Token t = token(i);
+		while ( t.getChannel()!=channel && t.getType()!=Token.EOF ) {
+			i++;
+			t = token(i);
+		}
+		return i;
+	}
+
+	protected void setup() {
+		p = 0;
+		p = skipOffTokenChannels(0);
+	}
+}
@@ -107,6 +107,23 @@ public class CommonToken implements Token, Serializable {
 		return text;
 	}
 
+	/** Get the text of the token without creating a String if we can.
+	 *  If the text hasn't been set or computed yet and the input is an
+	 *  ANTLRStringStream, return a view of the input buffer instead.
+	 *  Use this when you just need to look at the chars.
+	 */
+	public CharSequence getTextSequence() {
+		if ( text==null && input instanceof ANTLRStringStream ) {
+			// subSequence() checks the bounds; size() would decode all
+			// of an ANTLRMappedFileStream
+			CharSequence seq = ((ANTLRStringStream)input).subSequence(start,stop);
+			if ( seq!=null ) {
+				return seq;
+			}
+		}
+		return getText();
+	}
+
 	/** Override the text for this token.  getText() will return this text
 	 *  rather than pulling from the buffer.  Note that this does not mean
 	 *  that start/stop indexes are not valid.  It means that that input
@@ -49,6 +49,27 @@ public class CommonTokenStream extends BufferedTokenStream {
     /** Skip tokens on any channel but this one; this is how we skip whitespace... */
     protected int channel = Token.DEFAULT_CHANNEL;
 
+    /** Token indexes of the on-channel tokens (plus EOF) in the buffer, in
+     *  order.  We add to it as tokens come in so that lookahead and
+     *  lookbehind don't have to walk over off-channel tokens.
+     */
+    protected int[] onChannel = new int[100];
+
+    /** How many entries of onChannel are valid */
+    protected int numOnChannel = 0;
+
+    /** How many tokens from the start of the buffer we've added to onChannel */
+    protected int numIndexed = 0;
+
+    /** Index into onChannel of the first on-channel token at or after p.
+     *  Normally onChannel[onChannelP]==p, but seek() can put p on an
+     *  off-channel token.
+     */
+    protected int onChannelP = 0;
+
+    /** onChannelP as of the last mark() so rewinding to it is cheap */
+    protected int lastMarkerOnChannelP;
+
     public CommonTokenStream() { ; }
 
     public CommonTokenStream(TokenSource tokenSource) {
@@ -63,27 +84,22 @@ public class CommonTokenStream extends BufferedTokenStream {
     /** Always leave p on an on-channel token. */
     public void consume() {
         if ( p == -1 ) setup();
-        p++;
-        sync(p);
-        while ( tokens.get(p).getChannel()!=channel ) {
-            p++;
-            sync(p);
+        syncOnChannel(onChannelP); // might have seeked past what's indexed
+        if ( onChannelP<numOnChannel && onChannel[onChannelP]==p ) {
+            onChannelP++;
+        }
+        syncOnChannel(onChannelP);
+        if ( onChannelP>=numOnChannel ) { // can't move past EOF
+            onChannelP = numOnChannel-1;
         }
+        p = onChannel[onChannelP];
     }
 
     protected Token LB(int k) {
         if ( k==0 || (p-k)<0 ) return null;
-
-        int i = p;
-        int n = 1;
-        // find k good tokens looking backwards
-        while ( n<=k ) {
-            // skip off-channel tokens
-            i = skipOffTokenChannelsReverse(i-1);
-            n++;
-        }
-        if ( i<0 ) return null;
-        return tokens.get(i);
+        int j = onChannelP - k; // onChannel[0..onChannelP-1] are before p
+        if ( j<0 ) return null;
+        return tokens.get(onChannel[j]);
     }
 
     public Token LT(int k) {
@@ -91,18 +107,87 @@ public class CommonTokenStream extends BufferedTokenStream {
         if ( p == -1 ) setup();
         if ( k == 0 ) return null;
         if ( k < 0 ) return LB(-k);
-        int i = p;
-        int n = 1; // we know tokens[p] is a good one
-        // find k good tokens
-        while ( n<k ) {
-            // skip off-channel tokens
-            i = skipOffTokenChannels(i+1);
-            n++;
+        int j = onChannelP + k - 1;
+        syncOnChannel(onChannelP);
+        if ( onChannelP>=numOnChannel || onChannel[onChannelP]!=p ) {
+            // p is off-channel (we seeked there); it still counts as LT(1)
+            if ( k==1 ) {
+                if ( p>range ) range = p;
+                return tokens.get(p);
+            }
+            j--;
         }
-		if ( i>range ) range = i;		
+        syncOnChannel(j);
+        if ( j>=numOnChannel ) j = numOnChannel-1; // EOF must be last token
+        int i = onChannel[j];
+		if ( i>range ) range = i;
         return tokens.get(i);
     }
 
+    public int mark() {
+        int m = super.mark();
+        lastMarkerOnChannelP = onChannelP;
+        return m;
+    }
+
+    public void seek(int index) {
+        if ( index==p ) return;
+        super.seek(index);
+        if ( index==lastMarker && lastMarkerOnChannelP<numOnChannel &&
+             onChannel[lastMarkerOnChannelP]==index )
+        { // usually rewinding after a prediction
+            onChannelP = lastMarkerOnChannelP;
+            return;
+        }
+        indexTokens(index);
+        // find first on-channel token at or after index
+        int lo = 0;
+        int hi = numOnChannel;
+        while ( lo<hi ) {
+            int mid = (lo+hi) >>> 1;
+            if ( onChannel[mid]<index ) lo = mid+1;
+            else hi = mid;
+        }
+        onChannelP = lo;
+    }
+
+    public void reset() {
+        super.reset();
+        onChannelP = 0;
+        lastMarkerOnChannelP = 0;
+    }
+
+    /** Make sure onChannel[j] is valid unless we hit EOF first. */
+    protected void syncOnChannel(int j) {
+        while ( j>=numOnChannel ) {
+            if ( numIndexed==tokens.size() ) {
+                if ( numIndexed>0 && tokens.get(numIndexed-1).getType()==Token.EOF ) return;
+                sync(numIndexed);
+            }
+            indexTokens(numIndexed+1);
+        }
+    }
+
+    /** Add the on-channel tokens among those we've fetched but haven't
+     *  looked at yet, up to but not including token n, to onChannel.
+     *  We look at the channel only now rather than in fetch() since
+     *  subclasses may change it in sync().
+     */
+    protected void indexTokens(int n) {
+        if ( n>tokens.size() ) n = tokens.size();
+        for (; numIndexed < n; numIndexed++) {
+            Token t = tokens.get(numIndexed);
+            if ( t.getChannel()==channel || t.getType()==Token.EOF ) {
+                if ( numOnChannel==onChannel.length ) {
+                    int[] newOnChannel = new int[onChannel.length*2];
+                    System.arraycopy(onChannel, 0, newOnChannel, 0, numOnChannel);
+                    onChannel = newOnChannel;
+                }
+                onChannel[numOnChannel++] = numIndexed;
+            }
+        }
+    }
+
     /** Given a starting index, return the index of the first on-channel
      *  token.
      */
@@ -124,23 +209,23 @@ public class CommonTokenStream extends BufferedTokenStream {
 
     protected void setup() {
         p = 0;
-        sync(0);
-        int i = 0;
-        while ( tokens.get(i).getChannel()!=channel ) {
-            i++;
-            sync(i);
-        }
-        p = i;
+        syncOnChannel(0);
+        onChannelP = 0;
+        p = onChannel[0];
     }
 
-	/** Count EOF just once. */
+	/** Count EOF just once, and only if it's on our channel.  onChannel
+	 *  holds EOF whatever its channel so lookahead can stop there.
+	 */
 	public int getNumberOfOnChannelTokens() {
-		int n = 0;
 		fill();
-		for (int i = 0; i < tokens.size(); i++) {
-			Token t = tokens.get(i);
-			if ( t.getChannel()==channel ) n++;
-			if ( t.getType()==Token.EOF ) break;
+		indexTokens(tokens.size());
+		int n = numOnChannel;
+		if ( n>0 ) {
+			Token last = tokens.get(onChannel[n-1]);
+			if ( last.getType()==Token.EOF && last.getChannel()!=channel ) {
+				n--;
+			}
 		}
 		return n;
 	}
@@ -149,5 +234,10 @@ public class CommonTokenStream extends BufferedTokenStream {
     public void setTokenSource(TokenSource tokenSource) {
         super.setTokenSource(tokenSource);
         channel = Token.DEFAULT_CHANNEL;
+        numOnChannel = 0;
+        numIndexed = 0;
+        onChannelP = 0;
+        lastMarker = 0;
+        lastMarkerOnChannelP = 0;
     }
 }
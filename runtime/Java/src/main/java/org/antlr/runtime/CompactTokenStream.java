@@ -0,0 +1,418 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.util.NoSuchElementException;
+
+/** A channel-aware token stream like CommonTokenStream that doesn't keep
+ *  the Token objects it pulls from the token source.  It copies the
+ *  type, channel, start, stop, line and column of each token into
+ *  parallel int arrays and lets the token itself become garbage, so a
+ *  buffered token costs 24 bytes instead of a whole CommonToken.
+ *  Text is recomputed from the char stream on demand; we keep a String
+ *  only for tokens whose text was overridden by the lexer or that don't
+ *  point into the same char stream as the first token.
+ *
+ *  LA(k) reads the type array directly and never touches a Token.
+ *  LT(k) and get(i) hand out a View: a flyweight Token bound to a token
+ *  index that reads (and writes) through to the arrays.  Views are
+ *  immutable as to which token they denote, so the parser may hold onto
+ *  them as usual, and recently handed out views are reused, so
+ *  asking for LT(1) repeatedly doesn't allocate.
+ *
+ *  Like BufferedTokenStream, this stream pulls tokens on demand.
+ *
+ *  @see CommonTokenStream
+ */
+public class CompactTokenStream implements TokenStream {
+	public static final int INITIAL_BUFFER_SIZE = 1000;
+
+	/** How many views to remember; must be a power of 2 */
+	public static final int VIEW_CACHE_SIZE = 64;
+
+	protected TokenSource tokenSource;
+
+	/** Skip tokens on any channel but this one; this is how we skip whitespace... */
+	protected int channel = Token.DEFAULT_CHANNEL;
+
+	/** Where the text of every token comes from; set from first token */
+	protected CharStream input;
+
+	/** The token buffer as parallel arrays indexed by token index */
+	protected int[] types = new int[INITIAL_BUFFER_SIZE];
+	protected int[] channels = new int[INITIAL_BUFFER_SIZE];
+	protected int[] starts = new int[INITIAL_BUFFER_SIZE];
+	protected int[] stops = new int[INITIAL_BUFFER_SIZE];
+	protected int[] lines = new int[INITIAL_BUFFER_SIZE];
+	protected int[] charPositionsInLine = new int[INITIAL_BUFFER_SIZE];
+
+	/** Text of tokens we can't get from input; null until we need it */
+	protected String[] texts;
+
+	/** How many tokens are in the buffer */
+	protected int n = 0;
+
+	/** The index of the current token (next token to consume); p=-1
+	 *  indicates need to initialize with first token.
+	 */
+	protected int p = -1;
+
+	/** Track the last mark() call result value for use in rewind(). */
+	protected int lastMarker;
+
+	protected int range = -1; // how deep have we gone?
+
+	/** Recently created views; views[i%VIEW_CACHE_SIZE] may be for token i */
+	protected View[] views = new View[VIEW_CACHE_SIZE];
+
+	/** A Token that is really just an index into the stream's arrays */
+	public static class View implements Token {
+		protected CompactTokenStream stream;
+		protected int index;
+
+		public View(CompactTokenStream stream, int index) {
+			this.stream = stream;
+			this.index = index;
+		}
+
+		public String getText() { return stream.getText(index); }
+
+		public void setText(String text) { stream.setText(index, text); }
+
+		public int getType() { return stream.types[index]; }
+
+		public void setType(int ttype) { stream.types[index] = ttype; }
+
+		public int getLine() { return stream.lines[index]; }
+
+		public void setLine(int line) { stream.lines[index] = line; }
+
+		public int getCharPositionInLine() { return stream.charPositionsInLine[index]; }
+
+		public void setCharPositionInLine(int pos) { stream.charPositionsInLine[index] = pos; }
+
+		public int getChannel() { return stream.channels[index]; }
+
+		public void setChannel(int channel) { stream.channels[index] = channel; }
+
+		public int getStartIndex() { return stream.starts[index]; }
+
+		public int getStopIndex() { return stream.stops[index]; }
+
+		public int getTokenIndex() { return index; }
+
+		/** A view always denotes the same token */
+		public void setTokenIndex(int index) {
+			throw new UnsupportedOperationException("can't change the index of a token view");
+		}
+
+		public CharStream getInputStream() { return stream.input; }
+
+		public void setInputStream(CharStream input) {
+			throw new UnsupportedOperationException("can't change the input of a token view");
+		}
+
+		public String toString() {
+			String channelStr = "";
+			if ( getChannel()>0 ) {
+				channelStr=",channel="+getChannel();
+			}
+			String txt = getText();
+			if ( txt!=null ) {
+				txt = txt.replaceAll("\n","\\\\n");
+				txt = txt.replaceAll("\r","\\\\r");
+				txt = txt.replaceAll("\t","\\\\t");
+			}
+			else {
+				txt = "<no text>";
+			}
+			return "[@"+getTokenIndex()+","+getStartIndex()+":"+getStopIndex()+"='"+txt+"',<"+getType()+">"+channelStr+","+getLine()+":"+getCharPositionInLine()+"]";
+		}
+	}
+
+	public CompactTokenStream() {;}
+
+	public CompactTokenStream(TokenSource tokenSource) {
+		this.tokenSource = tokenSource;
+	}
+
+	public CompactTokenStream(TokenSource tokenSource, int channel) {
+		this(tokenSource);
+		this.channel = channel;
+	}
+
+	public TokenSource getTokenSource() { return tokenSource; }
+
+	/** Reset this token stream by setting its token source; the buffer
+	 *  arrays are kept for reuse.
+	 */
+	public void setTokenSource(TokenSource tokenSource) {
+		this.tokenSource = tokenSource;
+		n = 0;
+		p = -1;
+		range = -1;
+		input = null;
+		texts = null;
+		for (int i = 0; i < views.length; i++) views[i] = null;
+	}
+
+	public int index() { return p; }
+
+	public int range() { return range; }
+
+	public int size() { return n; }
+
+	public int mark() {
+		if ( p == -1 ) setup();
+		lastMarker = index();
+		return lastMarker;
+	}
+
+	public void release(int marker) {
+		// no resources to release
+	}
+
+	public void rewind(int marker) {
+		seek(marker);
+	}
+
+	public void rewind() {
+		seek(lastMarker);
+	}
+
+	public void seek(int index) { p = index; }
+
+	/** Always leave p on an on-channel token. */
+	public void consume() {
+		if ( p == -1 ) setup();
+		if ( types[p]==Token.EOF ) return;
+		p = skipOffTokenChannels(p+1);
+	}
+
+	public int LA(int i) {
+		if ( p == -1 ) setup();
+		if ( i==0 ) return Token.INVALID_TOKEN_TYPE;
+		if ( i<0 ) {
+			int j = lookBack(-i);
+			return j<0 ? Token.EOF : types[j];
+		}
+		return types[lookAhead(i)];
+	}
+
+	public Token LT(int k) {
+		if ( p == -1 ) setup();
+		if ( k == 0 ) return null;
+		if ( k < 0 ) {
+			int j = lookBack(-k);
+			return j<0 ? null : view(j);
+		}
+		return view(lookAhead(k));
+	}
+
+	/** Return the index of the kth on-channel token ahead */
+	protected int lookAhead(int k) {
+		int i = p;
+		int n = 1; // we know tokens[p] is a good one
+		// find k good tokens
+		while ( n<k && types[i]!=Token.EOF ) {
+			// skip off-channel tokens
+			i = skipOffTokenChannels(i+1);
+			n++;
+		}
+		if ( i>range ) range = i;
+		return i;
+	}
+
+	/** Return the index of the kth on-channel token back or -1 */
+	protected int lookBack(int k) {
+		int i = p;
+		for (int n = 1; n <= k && i >= 0; n++) {
+			i--;
+			while ( i>=0 && channels[i]!=channel ) {
+				i--;
+			}
+		}
+		return i;
+	}
+
+	/** Given a starting index, return the index of the first on-channel
+	 *  token; stop at EOF.
+	 */
+	protected int skipOffTokenChannels(int i) {
+		sync(i);
+		if ( i>=n ) return n-1; // EOF must be last token
+		while ( channels[i]!=channel && types[i]!=Token.EOF ) {
+			i++;
+			sync(i);
+		}
+		return i;
+	}
+
+	protected void setup() {
+		sync(0);
+		p = 0;
+		p = skipOffTokenChannels(0);
+	}
+
+	public Token get(int i) {
+		if ( i < 0 || i >= n ) {
+			throw new NoSuchElementException("token index "+i+" out of range 0.."+(n-1));
+		}
+		return view(i);
+	}
+
+	/** Return a view of token i, reusing a cached one if we can */
+	protected View view(int i) {
+		int slot = i & (VIEW_CACHE_SIZE-1);
+		View v = views[slot];
+		if ( v==null || v.index!=i ) {
+			v = new View(this, i);
+			views[slot] = v;
+		}
+		return v;
+	}
+
+	/** Make sure index i in the buffer has a token. */
+	protected void sync(int i) {
+		int need = i - n + 1; // how many more elements we need?
+		if ( need > 0 ) fetch(need);
+	}
+
+	/** Copy the next count tokens from the token source into the arrays */
+	protected void fetch(int count) {
+		for (int i=1; i<=count; i++) {
+			if ( n>0 && types[n-1]==Token.EOF ) return;
+			Token t = tokenSource.nextToken();
+			ensureCapacity(n+1);
+			types[n] = t.getType();
+			channels[n] = t.getChannel();
+			lines[n] = t.getLine();
+			charPositionsInLine[n] = t.getCharPositionInLine();
+			if ( input==null ) {
+				input = t.getInputStream();
+			}
+			String text = null;
+			if ( t instanceof CommonToken && t.getInputStream()==input ) {
+				CommonToken ct = (CommonToken)t;
+				starts[n] = ct.start;
+				stops[n] = ct.stop;
+				text = ct.text; // only non-null if overridden
+			}
+			else {
+				starts[n] = -1;
+				stops[n] = -1;
+				text = t.getText();
+			}
+			if ( text!=null ) {
+				setText(n, text);
+			}
+			n++;
+		}
+	}
+
+	protected void ensureCapacity(int size) {
+		if ( size<=types.length ) return;
+		int newSize = Math.max(types.length*2, size);
+		types = grow(types, newSize);
+		channels = grow(channels, newSize);
+		starts = grow(starts, newSize);
+		stops = grow(stops, newSize);
+		lines = grow(lines, newSize);
+		charPositionsInLine = grow(charPositionsInLine, newSize);
+		if ( texts!=null ) {
+			String[] newTexts = new String[newSize];
+			System.arraycopy(texts, 0, newTexts, 0, n);
+			texts = newTexts;
+		}
+	}
+
+	protected int[] grow(int[] a, int newSize) {
+		int[] b = new int[newSize];
+		System.arraycopy(a, 0, b, 0, n);
+		return b;
+	}
+
+	/** Get text of token i the same way CommonToken.getText() would */
+	public String getText(int i) {
+		if ( texts!=null && texts[i]!=null ) {
+			return texts[i];
+		}
+		if ( input==null ) {
+			return null;
+		}
+		int start = starts[i];
+		int stop = stops[i];
+		if ( start<input.size() && stop<input.size() ) {
+			return input.substring(start,stop);
+		}
+		return "<EOF>";
+	}
+
+	public void setText(int i, String text) {
+		if ( texts==null ) {
+			if ( text==null ) return;
+			texts = new String[types.length];
+		}
+		texts[i] = text;
+	}
+
+	public String getSourceName() {	return tokenSource.getSourceName(); }
+
+	/** Grab *all* tokens from stream and return string */
+	public String toString() {
+		fill();
+		return toString(0, n-1);
+	}
+
+	public String toString(int start, int stop) {
+		if ( start<0 || stop<0 ) return null;
+		if ( p == -1 ) setup();
+		if ( stop>=n ) stop = n-1;
+		StringBuffer buf = new StringBuffer();
+		for (int i = start; i <= stop; i++) {
+			if ( types[i]==Token.EOF ) break;
+			buf.append(getText(i));
+		}
+		return buf.toString();
+	}
+
+	public String toString(Token start, Token stop) {
+		if ( start!=null && stop!=null ) {
+			return toString(start.getTokenIndex(), stop.getTokenIndex());
+		}
+		return null;
+	}
+
+	/** Get all tokens from lexer until EOF */
+	public void fill() {
+		if ( p == -1 ) setup();
+		while ( types[n-1]!=Token.EOF ) {
+			fetch(1);
+		}
+	}
+}
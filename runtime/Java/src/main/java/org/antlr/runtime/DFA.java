@@ -49,9 +49,145 @@ public class DFA {
 
 	protected int decisionNumber;
 
+	/** If non-null, transition rows are indexed by char class rather than
+	 *  by char: the class of c is charClass[charClassBlock[c>>8]+(c&0xff)].
+	 *  Chars that no edge tells apart share a class, so a row covering
+	 *  all Unicode letters needs a handful of entries, not thousands.
+	 */
+	protected char[] charClassBlock;
+	protected char[] charClass;
+
+	/** Cache of recent predictions; null unless turned on */
+	protected PredictionCache cache;
+
+	/** The recognizer's getPredictionCacheSize() when we last looked */
+	protected int recognizerCacheSize = 0;
+
+	/** How many symbols did the last simulate() look at? */
+	protected int depth;
+
 	/** Which recognizer encloses this DFA?  Needed to check backtracking */
 	protected BaseRecognizer recognizer;
 
+	/** Encoded tables to decode upon the first predict(); null if the
+	 *  tables were set directly.
+	 */
+	protected Tables tables;
+
+	/** A decision's tables in their encoded form, shared by every instance
+	 *  of its DFA.  Generated recognizers make one per decision rather than
+	 *  decoding the strings when the class loads, so decisions that are
+	 *  never used cost almost nothing.  Decoded once, upon first use.
+	 */
+	public static class Tables {
+		protected String eotS;
+		protected String eofS;
+		protected String minS;
+		protected String maxS;
+		protected String acceptS;
+		protected String specialS;
+		protected String[] transitionS;
+
+		protected short[] eot;
+		protected short[] eof;
+		protected char[] min;
+		protected char[] max;
+		protected short[] accept;
+		protected short[] special;
+		protected short[][] transition;
+
+		/** Maps chars to the columns of min, max and transition; null if
+		 *  the tables are indexed by symbol.
+		 */
+		protected CharClasses classes;
+
+		/** FlatDFA.pack() of the above if a FlatDFA asked for it */
+		protected int[] flat;
+
+		public Tables(String eotS, String eofS, String minS, String maxS,
+					  String acceptS, String specialS, String[] transitionS)
+		{
+			this(eotS, eofS, minS, maxS, acceptS, specialS, transitionS, null);
+		}
+
+		public Tables(String eotS, String eofS, String minS, String maxS,
+					  String acceptS, String specialS, String[] transitionS,
+					  CharClasses classes)
+		{
+			this.eotS = eotS;
+			this.eofS = eofS;
+			this.minS = minS;
+			this.maxS = maxS;
+			this.acceptS = acceptS;
+			this.specialS = specialS;
+			this.transitionS = transitionS;
+			this.classes = classes;
+		}
+
+		public synchronized void decode() {
+			if ( transition!=null ) {
+				return;
+			}
+			if ( classes!=null ) {
+				classes.decode();
+			}
+			eot = unpackEncodedString(eotS);
+			eof = unpackEncodedString(eofS);
+			min = unpackEncodedStringToUnsignedChars(minS);
+			max = unpackEncodedStringToUnsignedChars(maxS);
+			accept = unpackEncodedString(acceptS);
+			special = unpackEncodedString(specialS);
+			short[][] t = new short[transitionS.length][];
+			for (int i=0; i<t.length; i++) {
+				t[i] = unpackEncodedString(transitionS[i]);
+			}
+			transition = t;
+		}
+
+		public synchronized int[] getFlatTable() {
+			if ( flat==null ) {
+				if ( classes!=null ) {
+					throw new UnsupportedOperationException("FlatDFA tables are indexed by char");
+				}
+				decode();
+				flat = FlatDFA.pack(eot, eof, min, max, accept, special, transition);
+			}
+			return flat;
+		}
+	}
+
+	/** A lexer's partition of the chars into classes that every edge of
+	 *  its table-driven DFAs treats alike, shared by all of them.  Stored
+	 *  as a two-level table: charClassBlock holds, for each high byte, the
+	 *  offset of a 256-entry block of charClass; equal blocks are stored
+	 *  once.
+	 */
+	public static class CharClasses {
+		protected String blockS;
+		protected String classS;
+
+		protected char[] charClassBlock;
+		protected char[] charClass;
+
+		public CharClasses(String blockS, String classS) {
+			this.blockS = blockS;
+			this.classS = classS;
+		}
+
+		public synchronized void decode() {
+			if ( charClass!=null ) {
+				return;
+			}
+			charClassBlock = unpackEncodedStringToUnsignedChars(blockS);
+			charClass = unpackEncodedStringToUnsignedChars(classS);
+		}
+
+		/** The class of char c; decode() first */
+		public int classOf(char c) {
+			return charClass[charClassBlock[c>>8]+(c&0xff)];
+		}
+	}
+
 	public static final boolean debug = false;
 
 	/** From the input stream, predict what alternative will succeed
@@ -61,12 +197,69 @@ public class DFA {
 	 */
 	public int predict(IntStream input)
 		throws RecognitionException
+	{
+		if ( transition==null ) {
+			loadTables();
+		}
+		if ( recognizer!=null &&
+			 recognizer.predictionCacheSize!=recognizerCacheSize )
+		{
+			recognizerCacheSizeChanged();
+		}
+		if ( cache!=null ) {
+			if ( recognizer!=null ) {
+				recognizer.state.predictedLength = 0;
+			}
+			return cache.predict(this, input);
+		}
+		int alt = simulate(input);
+		if ( recognizer!=null ) {
+			recognizer.state.predictedLength = depth-1;
+		}
+		spendWork(input);
+		return alt;
+	}
+
+	/** Decode our shared tables if nobody has yet and point at them */
+	protected void loadTables() {
+		if ( tables==null ) {
+			return;
+		}
+		tables.decode();
+		if ( tables.classes!=null ) {
+			charClassBlock = tables.classes.charClassBlock;
+			charClass = tables.classes.charClass;
+		}
+		eot = tables.eot;
+		eof = tables.eof;
+		min = tables.min;
+		max = tables.max;
+		accept = tables.accept;
+		special = tables.special;
+		transition = tables.transition;
+	}
+
+	/** Charge the symbols the last simulate() looked at against the
+	 *  recognizer's work budget; cached predictions are free.
+	 */
+	protected void spendWork(IntStream input) {
+		if ( recognizer!=null ) {
+			recognizer.spendWork(input, depth);
+		}
+	}
+
+	/** Walk the tables to predict an alternative, leaving the number of
+	 *  symbols we looked at in depth.
+	 */
+	protected int simulate(IntStream input)
+		throws RecognitionException
 	{
 		if ( debug ) {
 			System.err.println("Enter DFA.predict for decision "+decisionNumber);
 		}
 		int mark = input.mark(); // remember where decision started in input
 		int s = 0; // we always start at s0
+		int n = 0;
 		try {
 			while ( true ) {
 				if ( debug ) System.err.println("DFA "+decisionNumber+" state "+s+" LA(1)="+(char)input.LA(1)+"("+input.LA(1)+
@@ -87,6 +280,7 @@ public class DFA {
 						return 0;
 					}
 					input.consume();
+					n++;
 					continue;
 				}
 				if ( accept[s] >= 1 ) {
@@ -95,8 +289,12 @@ public class DFA {
 				}
 				// look for a normal char transition
 				char c = (char)input.LA(1); // -1 == \uFFFF, all tokens fit in 65000 space
-				if (c>=min[s] && c<=max[s]) {
-					int snext = transition[s][c-min[s]]; // move to next state
+				int x = c; // column of c in the tables
+				if ( charClass!=null ) {
+					x = charClass[charClassBlock[c>>8]+(c&0xff)];
+				}
+				if (x>=min[s] && x<=max[s]) {
+					int snext = transition[s][x-min[s]]; // move to next state
 					if ( snext < 0 ) {
 						// was in range but not a normal transition
 						// must check EOT, which is like the else clause.
@@ -106,6 +304,7 @@ public class DFA {
 							if ( debug ) System.err.println("EOT transition");
 							s = eot[s];
 							input.consume();
+							n++;
 							// TODO: I had this as return accept[eot[s]]
 							// which assumed here that the EOT edge always
 							// went to an accept...faster to do this, but
@@ -118,12 +317,14 @@ public class DFA {
 					}
 					s = snext;
 					input.consume();
+					n++;
 					continue;
 				}
 				if ( eot[s]>=0 ) {  // EOT Transition?
 					if ( debug ) System.err.println("EOT transition");
 					s = eot[s];
 					input.consume();
+					n++;
 					continue;
 				}
 				if ( c==(char)Token.EOF && eof[s]>=0 ) {  // EOF Transition to accept state?
@@ -146,10 +347,49 @@ public class DFA {
 			}
 		}
 		finally {
+			depth = n+1;
 			input.rewind(mark);
 		}
 	}
 
+	/** Cache predictions in a table of the given size (a power of 2).
+	 *  Does nothing if the DFA has predicates since a prediction then
+	 *  depends on more than the input symbols.
+	 */
+	public void setPredictionCacheSize(int size) {
+		if ( special==null ) {
+			loadTables();
+		}
+		// generated specialS strings decode to a few extra entries past
+		// the last state, so only look at real states
+		int n = Math.min(special.length, accept.length);
+		for (int s = 0; s < n; s++) {
+			if ( special[s]>=0 ) {
+				return;
+			}
+		}
+		cache = new PredictionCache(size);
+		if ( recognizer!=null ) {
+			recognizer.addPredictionCache(cache);
+		}
+	}
+
+	/** Follow BaseRecognizer.setPredictionCacheSize() */
+	protected void recognizerCacheSizeChanged() {
+		recognizerCacheSize = recognizer.predictionCacheSize;
+		if ( recognizerCacheSize>0 ) {
+			setPredictionCacheSize(recognizerCacheSize);
+		}
+		else {
+			cache = null;
+		}
+	}
+
+	/** Return the prediction cache or null if predictions aren't cached */
+	public PredictionCache getPredictionCache() {
+		return cache;
+	}
+
 	protected void noViableAlt(int s, IntStream input) throws NoViableAltException {
 		if (recognizer.state.backtracking>0) {
 			recognizer.state.failed=true;
@@ -0,0 +1,195 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+/** A DFA whose tables are packed into a single int[] so that predict()
+ *  touches one array.  Each state is a row:
+ *
+ *    HEADER  alt to predict if an accept state, -(special state + 2)
+ *            if a special state, else 0
+ *    STATE   state number (for error messages)
+ *    EOT     row offset of the EOT target or -1
+ *    EOF     alt to predict upon EOF or NO_ALT
+ *    LO, HI  range of symbols >= 128 with an entry in UPPER
+ *    ASCII   128 entries for symbols 0..127: target row offset or -1
+ *    UPPER   HI-LO+1 entries for symbols LO..HI
+ *
+ *  The first numStates ints map state numbers to row offsets, which
+ *  we only need after a specialStateTransition().  Edges hold row
+ *  offsets so there's no lookup per symbol; for the common lexer case
+ *  of an ASCII char that's one array load per transition.  pack() builds
+ *  the table from the usual DFA tables, once per decision.
+ */
+public class FlatDFA extends DFA {
+	public static final int HEADER = 0;
+	public static final int STATE = 1;
+	public static final int EOT = 2;
+	public static final int EOF = 3;
+	public static final int LO = 4;
+	public static final int HI = 5;
+	public static final int ASCII = 6;
+	public static final int UPPER = ASCII+128;
+
+	public static final int NO_ALT = Integer.MIN_VALUE;
+
+	protected int[] table;
+
+	protected int simulate(IntStream input)
+		throws RecognitionException
+	{
+		int[] t = table;
+		int mark = input.mark(); // remember where decision started in input
+		int r = t[0]; // we always start at s0
+		int n = 0;
+		try {
+			while ( true ) {
+				int h = t[r+HEADER];
+				if ( h>0 ) {
+					return h; // accept state
+				}
+				if ( h<0 ) {
+					int s = specialStateTransition(-h-2, input);
+					if ( s==-1 ) {
+						noViableAlt(t[r+STATE], input);
+						return 0;
+					}
+					input.consume();
+					n++;
+					r = t[s];
+					continue;
+				}
+				int c = input.LA(1);
+				if ( c>=0 && c<128 ) { // the fast path
+					int next = t[r+ASCII+c];
+					if ( next>0 ) {
+						r = next;
+						input.consume();
+						n++;
+						continue;
+					}
+				}
+				else {
+					c = (char)c; // -1 == 0xFFFF, all tokens fit in 65000 space
+					if ( c>=t[r+LO] && c<=t[r+HI] ) {
+						int next = t[r+UPPER+c-t[r+LO]];
+						if ( next>0 ) {
+							r = next;
+							input.consume();
+							n++;
+							continue;
+						}
+						c = 0; // was in range so don't try EOF below
+					}
+				}
+				if ( t[r+EOT]>=0 ) {  // EOT Transition?
+					r = t[r+EOT];
+					input.consume();
+					n++;
+					continue;
+				}
+				if ( c==(char)Token.EOF && t[r+EOF]!=NO_ALT ) {
+					return t[r+EOF]; // EOF Transition to accept state
+				}
+				noViableAlt(t[r+STATE], input);
+				return 0;
+			}
+		}
+		finally {
+			depth = n+1;
+			input.rewind(mark);
+		}
+	}
+
+	protected void loadTables() {
+		super.loadTables();
+		if ( tables!=null ) {
+			table = tables.getFlatTable();
+		}
+	}
+
+	/** Pack the usual DFA tables into one int[] as described above */
+	public static int[] pack(short[] eot, short[] eof,
+							 char[] min, char[] max,
+							 short[] accept, short[] special,
+							 short[][] transition)
+	{
+		int numStates = transition.length;
+		int[] rows = new int[numStates];
+		int size = numStates;
+		for (int s = 0; s < numStates; s++) {
+			rows[s] = size;
+			size += UPPER+upperSize(s, min, max, transition);
+		}
+		int[] t = new int[size];
+		System.arraycopy(rows, 0, t, 0, numStates);
+		for (int s = 0; s < numStates; s++) {
+			int r = rows[s];
+			if ( special[s]>=0 ) {
+				t[r+HEADER] = -(special[s]+2);
+			}
+			else if ( accept[s]>=1 ) {
+				t[r+HEADER] = accept[s];
+			}
+			t[r+STATE] = s;
+			t[r+EOT] = eot[s]>=0 ? rows[eot[s]] : -1;
+			t[r+EOF] = eof[s]>=0 ? accept[eof[s]] : NO_ALT;
+			for (int c = 0; c < 128; c++) {
+				t[r+ASCII+c] = target(s, c, rows, min, max, transition);
+			}
+			int lo = Math.max(min[s], 128);
+			t[r+LO] = lo;
+			t[r+HI] = lo+upperSize(s, min, max, transition)-1;
+			for (int c = lo; c <= t[r+HI]; c++) {
+				t[r+UPPER+c-lo] = target(s, c, rows, min, max, transition);
+			}
+		}
+		return t;
+	}
+
+	protected static int upperSize(int s, char[] min, char[] max, short[][] transition) {
+		if ( transition[s]==null ) {
+			return 0;
+		}
+		int lo = Math.max(min[s], 128);
+		int hi = Math.min(max[s], min[s]+transition[s].length-1);
+		return Math.max(hi-lo+1, 0);
+	}
+
+	protected static int target(int s, int c,
+								int[] rows, char[] min, char[] max,
+								short[][] transition)
+	{
+		if ( transition[s]==null || c<min[s] || c>max[s] ||
+			 c-min[s]>=transition[s].length )
+		{
+			return -1;
+		}
+		int snext = transition[s][c-min[s]];
+		return snext>=0 ? rows[snext] : -1;
+	}
+}
@@ -0,0 +1,337 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import org.antlr.runtime.misc.IntIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A token stream over a document that changes a little at a time, as in
+ *  an editor.  edit() relexes only from the first token whose lexing
+ *  looked at the changed chars until the lexer starts a token at the
+ *  same (shifted) spot as it did before; the rest of the old tokens are
+ *  kept with their indexes and positions shifted.
+ *
+ *  To reparse, call resetParser(parser) rather than parser.reset().  It
+ *  keeps the parser's memoized rule results that the edit can't have
+ *  changed: those for rules starting after the relexed tokens (shifted)
+ *  and those before the edit that never looked as far as the relexed
+ *  tokens.  For the latter we note how far into the tokens the parse
+ *  had looked (range()) when each result was memoized.
+ *
+ *  All tokens are lexed up front.  The lexer must emit CommonTokens
+ *  (the default) and must not look behind the start of a token.
+ */
+public class IncrementalTokenStream extends CommonTokenStream implements MemoListener {
+	/** A string stream that notes the furthest char index looked at */
+	protected static class TrackingStream extends ANTLRStringStream {
+		public int maxLookedAt;
+
+		public TrackingStream(String input) {
+			super(input);
+		}
+
+		public int LA(int i) {
+			int j = p+i-1;
+			if ( j>maxLookedAt ) {
+				maxLookedAt = j;
+			}
+			return super.LA(i);
+		}
+	}
+
+	protected Lexer lexer;
+
+	protected String text;
+
+	protected TrackingStream input;
+
+	/** For each token: char index, line and char position at which the
+	 *  nextToken() call that returned it started (i.e., including any
+	 *  skipped input before it), and the furthest char index it read.
+	 */
+	protected int[] callStart;
+	protected int[] callLine;
+	protected int[] callCharPositionInLine;
+	protected int[] lookedAt;
+
+	/** Per rule, map from rule start token index to range() when it was
+	 *  memoized.
+	 */
+	protected IntIntHashMap[] memoRange = new IntIntHashMap[0];
+
+	/** (first relexed token, first old token kept or -1, token index
+	 *  delta) triples for each edit since the last resetParser().
+	 */
+	protected List pendingEdits = new ArrayList();
+
+	public IncrementalTokenStream(Lexer lexer, String text) {
+		this(lexer, text, Token.DEFAULT_CHANNEL);
+	}
+
+	public IncrementalTokenStream(Lexer lexer, String text, int channel) {
+		super(lexer, channel);
+		this.lexer = lexer;
+		this.text = text;
+		input = new TrackingStream(text);
+		int n = 16;
+		callStart = new int[n];
+		callLine = new int[n];
+		callCharPositionInLine = new int[n];
+		lookedAt = new int[n];
+		lexer.setCharStream(input);
+		lex();
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	/** Replace removed chars at offset with inserted and relex as little
+	 *  as we can.  The stream is reset to the first token.
+	 */
+	public void edit(int offset, int removed, String inserted) {
+		if ( offset<0 || removed<0 || offset+removed>text.length() ) {
+			throw new IllegalArgumentException("bad edit "+offset+"+"+removed+
+											   " of "+text.length()+" chars");
+		}
+		text = text.substring(0, offset)+inserted+text.substring(offset+removed);
+		int delta = inserted.length()-removed;
+		int newEditStop = offset+inserted.length();
+
+		// first token whose lexing looked at the edit
+		int n = tokens.size();
+		int first = 0;
+		while ( first<n-1 && lookedAt[first]<offset ) {
+			first++;
+		}
+		List oldTokens = new ArrayList(tokens);
+		int[] oldCallStart = callStart;
+		int[] oldCallLine = callLine;
+		int[] oldCallCharPositionInLine = callCharPositionInLine;
+		int[] oldLookedAt = lookedAt;
+		callStart = new int[n+16];
+		callLine = new int[n+16];
+		callCharPositionInLine = new int[n+16];
+		lookedAt = new int[n+16];
+		System.arraycopy(oldCallStart, 0, callStart, 0, first);
+		System.arraycopy(oldCallLine, 0, callLine, 0, first);
+		System.arraycopy(oldCallCharPositionInLine, 0, callCharPositionInLine, 0, first);
+		System.arraycopy(oldLookedAt, 0, lookedAt, 0, first);
+
+		String name = input.name;
+		input = new TrackingStream(text);
+		input.name = name;
+		input.p = oldCallStart[first];
+		input.line = oldCallLine[first];
+		input.charPositionInLine = oldCallCharPositionInLine[first];
+		lexer.setCharStream(input);
+
+		int channel = this.channel;
+		setTokenSource(lexer); // clears tokens and the on-channel index
+		this.channel = channel;
+		for (int i = 0; i < first; i++) {
+			Token t = (Token)oldTokens.get(i);
+			t.setInputStream(input);
+			tokens.add(t);
+		}
+
+		// relex until we start a token where an old token started
+		int old = first;
+		while ( true ) {
+			int start = input.index();
+			if ( start>=newEditStop ) {
+				while ( old<n && oldCallStart[old]<start-delta ) {
+					old++;
+				}
+				if ( old<n && oldCallStart[old]==start-delta ) {
+					break;
+				}
+			}
+			if ( nextToken().getType()==Token.EOF ) {
+				old = -1; // nothing left to keep
+				break;
+			}
+		}
+
+		if ( old>=0 ) {
+			// shift the rest of the old tokens
+			int tokenDelta = tokens.size()-old;
+			int lineDelta = input.getLine()-oldCallLine[old];
+			int syncLine = oldCallLine[old];
+			int charPositionDelta =
+				input.getCharPositionInLine()-oldCallCharPositionInLine[old];
+			for (int i = old; i < n; i++) {
+				CommonToken t = (CommonToken)oldTokens.get(i);
+				int j = tokens.size();
+				if ( t.getLine()==syncLine ) {
+					t.setCharPositionInLine(t.getCharPositionInLine()+charPositionDelta);
+				}
+				t.setLine(t.getLine()+lineDelta);
+				t.setStartIndex(t.getStartIndex()+delta);
+				t.setStopIndex(t.getStopIndex()+delta);
+				t.setTokenIndex(j);
+				t.setInputStream(input);
+				ensureCapacity(j);
+				callStart[j] = oldCallStart[i]+delta;
+				callLine[j] = oldCallLine[i]+lineDelta;
+				callCharPositionInLine[j] = oldCallCharPositionInLine[i];
+				if ( oldCallLine[i]==syncLine ) {
+					callCharPositionInLine[j] += charPositionDelta;
+				}
+				lookedAt[j] = oldLookedAt[i]+delta;
+				tokens.add(t);
+			}
+			pendingEdits.add(new int[] {first, old, tokenDelta});
+		}
+		else {
+			pendingEdits.add(new int[] {first, -1, 0});
+		}
+		range = -1;
+	}
+
+	/** Reset parser to parse this stream again, keeping what memoized
+	 *  rule results are still good after the edits.
+	 */
+	public void resetParser(BaseRecognizer parser) {
+		IntIntHashMap[] ruleMemo = parser.getRuleMemoTables();
+		IntIntHashMap[] saved = null;
+		if ( ruleMemo!=null ) {
+			saved = new IntIntHashMap[ruleMemo.length];
+			System.arraycopy(ruleMemo, 0, saved, 0, ruleMemo.length);
+			Arrays.fill(ruleMemo, null); // keep reset() from clearing them
+		}
+		parser.reset();
+		p = -1; // skip any off-channel tokens at the start again
+		range = -1;
+		if ( saved==null ) {
+			pendingEdits.clear();
+			return;
+		}
+		for (int r = 0; r < saved.length; r++) {
+			IntIntHashMap memo = saved[r];
+			IntIntHashMap ranges = r<memoRange.length ? memoRange[r] : null;
+			if ( memo==null || ranges==null ) {
+				continue;
+			}
+			for (int e = 0; e < pendingEdits.size(); e++) {
+				int[] edit = (int[])pendingEdits.get(e);
+				IntIntHashMap newMemo = new IntIntHashMap();
+				IntIntHashMap newRanges = new IntIntHashMap();
+				for (int i = 0; i < memo.capacity(); i++) {
+					int start = memo.keyAt(i);
+					if ( start==IntIntHashMap.EMPTY ) {
+						continue;
+					}
+					int stop = memo.valueAt(i);
+					int looked = ranges.get(start, IntIntHashMap.EMPTY);
+					if ( looked==IntIntHashMap.EMPTY ) {
+						continue;
+					}
+					if ( looked<edit[0] ) { // never saw the edit
+						newMemo.put(start, stop);
+						newRanges.put(start, looked);
+					}
+					else if ( edit[1]>=0 && start>=edit[1] ) {
+						if ( stop>=0 ) {
+							stop += edit[2];
+						}
+						newMemo.put(start+edit[2], stop);
+						newRanges.put(start+edit[2], looked+edit[2]);
+					}
+				}
+				memo = newMemo;
+				ranges = newRanges;
+			}
+			ruleMemo[r] = memo;
+			memoRange[r] = ranges;
+		}
+		pendingEdits.clear();
+	}
+
+	/** A parser memoized a rule on us; note how far it had looked */
+	public void memoized(int ruleIndex, int ruleStartIndex) {
+		if ( ruleIndex>=memoRange.length ) {
+			IntIntHashMap[] newMemoRange = new IntIntHashMap[ruleIndex+1];
+			System.arraycopy(memoRange, 0, newMemoRange, 0, memoRange.length);
+			memoRange = newMemoRange;
+		}
+		if ( memoRange[ruleIndex]==null ) {
+			memoRange[ruleIndex] = new IntIntHashMap();
+		}
+		memoRange[ruleIndex].put(ruleStartIndex, range);
+	}
+
+	/** All tokens are in the buffer already */
+	protected void fetch(int n) {
+	}
+
+	/** Lex from the current char to EOF, appending tokens */
+	protected void lex() {
+		while ( nextToken().getType()!=Token.EOF ) {
+		}
+	}
+
+	/** Get a token from the lexer, noting where it started and how far
+	 *  it looked; add it to the buffer.
+	 */
+	protected Token nextToken() {
+		int j = tokens.size();
+		ensureCapacity(j);
+		callStart[j] = input.index();
+		callLine[j] = input.getLine();
+		callCharPositionInLine[j] = input.getCharPositionInLine();
+		input.maxLookedAt = input.index();
+		Token t = lexer.nextToken();
+		lookedAt[j] = input.maxLookedAt;
+		t.setTokenIndex(j);
+		tokens.add(t);
+		return t;
+	}
+
+	protected void ensureCapacity(int j) {
+		if ( j<callStart.length ) {
+			return;
+		}
+		int n = callStart.length*2;
+		int[] a = new int[n];
+		System.arraycopy(callStart, 0, a, 0, callStart.length);
+		callStart = a;
+		a = new int[n];
+		System.arraycopy(callLine, 0, a, 0, callLine.length);
+		callLine = a;
+		a = new int[n];
+		System.arraycopy(callCharPositionInLine, 0, a, 0, callCharPositionInLine.length);
+		callCharPositionInLine = a;
+		a = new int[n];
+		System.arraycopy(lookedAt, 0, a, 0, lookedAt.length);
+		lookedAt = a;
+	}
+}
@@ -27,6 +27,10 @@
  */
 package org.antlr.runtime;
 
+import org.antlr.runtime.misc.StringTable;
+
+import java.util.List;
+
 /** A lexer is recognizer that draws input symbols from a character stream.
  *  lexer grammars result in a subclass of this object. A Lexer object
  *  uses simplified match() and error recovery mechanisms in the interest
@@ -36,6 +40,19 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 	/** Where is the lexer drawing characters from? */
 	protected CharStream input;
 
+	/** If non-null, emit() looks up the text of each token here so that
+	 *  tokens with the same text share a single String.  Off by default.
+	 *  @see #shouldInternText(int)
+	 */
+	protected StringTable textTable;
+
+	/** If non-null, reportError() adds each error here instead of
+	 *  displaying it so the caller can decide later whether to report
+	 *  it.  ParallelTokenSource holds back errors from chunks it might
+	 *  throw away this way.
+	 */
+	protected List deferredErrors;
+
 	public Lexer() {
 	}
 
@@ -77,6 +94,10 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 			state.tokenStartCharPositionInLine = input.getCharPositionInLine();
 			state.tokenStartLine = input.getLine();
 			state.text = null;
+			if ( state.synpredMemo!=null ) {
+				// we never backtrack into a previous token
+				commitMemoization(state.tokenStartCharIndex);
+			}
 			if ( input.LA(1)==CharStream.EOF ) {
                 Token eof = new CommonToken((CharStream)input,Token.EOF,
                                             Token.DEFAULT_CHANNEL,
@@ -85,6 +106,9 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
                 eof.setCharPositionInLine(getCharPositionInLine());
                 return eof;
 			}
+			// hold onto the text of this token until it's emitted; lets
+			// unbuffered streams discard everything before it
+			int tokenStartMarker = input.mark();
 			try {
 				mTokens();
 				if ( state.token==null ) {
@@ -103,6 +127,9 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 				reportError(re);
 				// match() routine has already called recover()
 			}
+			finally {
+				input.release(tokenStartMarker);
+			}
 		}
 	}
 
@@ -134,6 +161,26 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 		return input.getSourceName();
 	}
 
+	/** Turn on token text interning by giving the lexer a table to intern
+	 *  into (it can be shared with other lexers); null turns it off.
+	 */
+	public void setTextTable(StringTable textTable) {
+		this.textTable = textTable;
+	}
+
+	public StringTable getTextTable() {
+		return textTable;
+	}
+
+	/** Should emit() intern the text of tokens of this type when a
+	 *  textTable is set?  By default, yes.  Override to restrict it to
+	 *  identifiers and keywords so unique strings and numbers don't
+	 *  fill up the table.
+	 */
+	protected boolean shouldInternText(int ttype) {
+		return true;
+	}
+
 	/** Currently does not support multiple emits per nextToken invocation
 	 *  for efficiency reasons.  Subclass and override this method and
 	 *  nextToken (to push tokens into a list and pull from that list rather
@@ -151,16 +198,48 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 	 *
 	 *  If you are building trees, then you should also override
 	 *  Parser or TreeParser.getMissingSymbol().
+	 *
+	 *  A TransientCharStream may forget the text once we move on so
+	 *  copy it into the token now if the stream says so.  If there is a
+	 *  textTable, set the token's text to the shared copy from the table.
 	 */
 	public Token emit() {
 		Token t = new CommonToken(input, state.type, state.channel, state.tokenStartCharIndex, getCharIndex()-1);
 		t.setLine(state.tokenStartLine);
-		t.setText(state.text);
+		if ( state.text!=null ) {
+			t.setText(state.text);
+		}
+		else if ( textTable!=null && shouldInternText(state.type) ) {
+			t.setText(internText());
+		}
+		else if ( input instanceof TransientCharStream &&
+				  ((TransientCharStream)input).mustCopyTokenText() )
+		{
+			t.setText(getText());
+		}
 		t.setCharPositionInLine(state.tokenStartCharPositionInLine);
 		emit(t);
 		return t;
 	}
 
+	/** The Tokens DFA just predicted a rule that matches only s.  If it
+	 *  consumed at least s.length() chars doing so, it has already checked
+	 *  every char of s against the rule, so consume them without looking
+	 *  and return true; else return false and let the rule match s.
+	 *  Generated mTokens() methods call this for action-free literal rules
+	 *  to avoid scanning each char twice.
+	 */
+	public boolean matchPredicted(String s) {
+		int n = s.length();
+		if ( state.predictedLength<n ) {
+			return false;
+		}
+		for (int i=0; i<n; i++) {
+			input.consume();
+		}
+		return true;
+	}
+
 	public void match(String s) throws MismatchedTokenException {
 		int i = 0;
 		while ( i<s.length() ) {
@@ -239,6 +318,22 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 		return input.substring(state.tokenStartCharIndex,getCharIndex()-1);
 	}
 
+	/** Return the text matched so far for the current token from
+	 *  textTable.  Avoid creating a String just to look it up when the
+	 *  chars are in an array we can get at.
+	 */
+	protected String internText() {
+		int start = state.tokenStartCharIndex;
+		int stop = getCharIndex()-1;
+		if ( input instanceof ANTLRStringStream ) {
+			char[] data = ((ANTLRStringStream)input).data;
+			if ( data!=null ) {
+				return textTable.intern(data, start, stop-start+1);
+			}
+		}
+		return textTable.intern(input.substring(start, stop));
+	}
+
 	/** Set the complete text of this token; it wipes any previous
 	 *  changes to the text.
 	 */
@@ -258,6 +353,10 @@ public abstract class Lexer extends BaseRecognizer implements TokenSource {
 		errorRecovery = true;
 		 */
 
+		if ( deferredErrors!=null ) {
+			deferredErrors.add(e);
+			return;
+		}
 		displayRecognitionError(this.getTokenNames(), e);
 	}
 
@@ -0,0 +1,412 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/** A token source that lexes a char stream in chunks on several threads
+ *  and then hands back the tokens in order, so you can wrap it in a
+ *  CommonTokenStream like any lexer.  The tokens get continuous token
+ *  indexes from the token stream as usual and line/column fixed up to be
+ *  relative to the whole input.
+ *
+ *  You supply the split points: char indexes where the lexer is known
+ *  to be between tokens in its default state such as newlines outside
+ *  of strings and comments.  Each chunk is lexed by a lexer from the
+ *  LexerFactory; idle lexers are kept and reused via setCharStream(),
+ *  so we make no more of them than there are chunks lexing at once.
+ *  Chunks see EOF at their end rather than the next chunk's chars.
+ *
+ *  Since a split point can be wrong, each one is checked by relexing
+ *  from the last token before it in the full input.  If that doesn't
+ *  reproduce the same last token and the first token of the next
+ *  chunk, the split is dropped and the two chunks are lexed again as
+ *  one.  Error recovery can make a bad split look good, so a chunk with
+ *  errors is also lexed again with the next chunk, once, to see if the
+ *  errors go away.  Lexer errors are held back until all splits check
+ *  out, so a bad split (say, inside a string) doesn't report errors the
+ *  lexer would never see in the full input; the errors from the chunks
+ *  we keep then go to reportError() in input order with lines relative
+ *  to the whole input.  A lexer that overrides reportError() itself gets
+ *  errors from every chunk as they happen.  Lexer actions must not
+ *  depend on state carried across tokens and the lexer must emit
+ *  CommonTokens (the default) or no split checks out.
+ *
+ *  The input must be an ANTLRStringStream with chars in memory or an
+ *  ANTLRUTF8Stream, both of which let us view the same data from
+ *  several threads; any other stream is copied into an
+ *  ANTLRStringStream first.
+ */
+public class ParallelTokenSource implements TokenSource {
+	/** Create a lexer for a worker; called once per thread */
+	public interface LexerFactory {
+		public Lexer newLexer();
+	}
+
+	/** A range of input start..stop-1 and the tokens it lexed to */
+	protected static class Chunk {
+		public int start;
+		public int stop;
+		/** The non-EOF tokens */
+		public List tokens;
+		public Token eof;
+		/** RecognitionExceptions the lexer hit, not yet reported */
+		public List errors;
+		/** Set if we made this chunk to relex one with errors; we trust
+		 *  its errors are real rather than relex it again.
+		 */
+		public boolean errorsChecked;
+		/** Line and charPositionInLine at stop, counting from 1 and 0 */
+		public int endLine;
+		public int endCharPositionInLine;
+
+		public Chunk(int start, int stop) {
+			this.start = start;
+			this.stop = stop;
+		}
+	}
+
+	protected LexerFactory factory;
+	protected CharStream input;
+	protected int[] splitPoints;
+	protected ExecutorService executor;
+
+	/** Lexers not in use by any thread */
+	protected List idleLexers = new ArrayList();
+
+	/** All tokens including EOF once we've lexed; null before */
+	protected List tokens;
+
+	/** Index into tokens of next token to return from nextToken() */
+	protected int p = 0;
+
+	/** Lex on executor; it's not shut down when we're done */
+	public ParallelTokenSource(LexerFactory factory,
+							   CharStream input,
+							   int[] splitPoints,
+							   ExecutorService executor)
+	{
+		this.factory = factory;
+		this.input = input;
+		this.splitPoints = splitPoints;
+		this.executor = executor;
+	}
+
+	/** Lex on a pool with a daemon thread for each processor */
+	public ParallelTokenSource(LexerFactory factory,
+							   CharStream input,
+							   int[] splitPoints)
+	{
+		this(factory, input, splitPoints, null);
+	}
+
+	/** Return the tokens in order; lex everything upon first call */
+	public Token nextToken() {
+		if ( tokens==null ) {
+			tokens = lex();
+		}
+		Token t = (Token)tokens.get(p);
+		if ( p < tokens.size()-1 ) {
+			p++; // stay on EOF
+		}
+		return t;
+	}
+
+	public String getSourceName() {
+		return input.getSourceName();
+	}
+
+	/** Lex all chunks, dropping bad split points until each split
+	 *  checks out, then stitch the tokens together.
+	 */
+	protected List lex() {
+		if ( !(input instanceof ANTLRUTF8Stream) &&
+			 !(input instanceof ANTLRStringStream &&
+			   ((ANTLRStringStream)input).data!=null) )
+		{
+			ANTLRStringStream copy = new ANTLRStringStream(
+				input.size()>0 ? input.substring(0, input.size()-1) : "");
+			copy.name = input.getSourceName();
+			input = copy;
+		}
+		List chunks = new ArrayList();
+		int start = 0;
+		for (int i = 0; i < splitPoints.length; i++) {
+			int split = splitPoints[i];
+			if ( split>start && split<input.size() ) {
+				chunks.add(new Chunk(start, split));
+				start = split;
+			}
+		}
+		chunks.add(new Chunk(start, input.size()));
+
+		ExecutorService pool = executor;
+		if ( pool==null ) {
+			pool = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "ParallelTokenSource");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		}
+		try {
+			boolean stitched = false;
+			while ( !stitched ) {
+				lexChunks(pool, chunks);
+				stitched = true;
+				// walk backwards so merging doesn't shift chunks yet to check
+				for (int i = chunks.size()-2; i >= 0; i--) {
+					Chunk a = (Chunk)chunks.get(i);
+					Chunk b = (Chunk)chunks.get(i+1);
+					if ( b.tokens==null ) {
+						continue; // just merged; check next time around
+					}
+					if ( !isTokenBoundary(a, b) ) {
+						Chunk merged = new Chunk(a.start, b.stop);
+						merged.errorsChecked = a.errors.size()>0 && !a.errorsChecked;
+						chunks.set(i, merged);
+						chunks.remove(i+1);
+						stitched = false;
+					}
+				}
+			}
+		}
+		finally {
+			if ( executor==null ) {
+				pool.shutdown();
+			}
+		}
+		List all = stitch(chunks);
+		reportErrors(chunks);
+		return all;
+	}
+
+	/** Get an idle lexer or make a new one */
+	protected Lexer takeLexer() {
+		synchronized (idleLexers) {
+			if ( idleLexers.size()>0 ) {
+				return (Lexer)idleLexers.remove(idleLexers.size()-1);
+			}
+		}
+		return factory.newLexer();
+	}
+
+	protected void releaseLexer(Lexer lexer) {
+		lexer.deferredErrors = null;
+		synchronized (idleLexers) {
+			idleLexers.add(lexer);
+		}
+	}
+
+	/** Lex any chunks we haven't lexed yet in parallel */
+	protected void lexChunks(ExecutorService pool, List chunks) {
+		List futures = new ArrayList();
+		for (int i = 0; i < chunks.size(); i++) {
+			final Chunk c = (Chunk)chunks.get(i);
+			if ( c.tokens!=null ) {
+				continue;
+			}
+			futures.add(pool.submit(new Runnable() {
+				public void run() {
+					lexChunk(c);
+				}
+			}));
+		}
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				((Future)futures.get(i)).get();
+			}
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ie);
+		}
+		catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if ( cause instanceof RuntimeException ) throw (RuntimeException)cause;
+			if ( cause instanceof Error ) throw (Error)cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	protected void lexChunk(Chunk c) {
+		CharStream chunkInput = newChunkStream(c.start, c.stop);
+		Lexer lexer = takeLexer();
+		try {
+			lexer.setCharStream(chunkInput);
+			c.errors = new ArrayList();
+			lexer.deferredErrors = c.errors;
+			List chunkTokens = new ArrayList();
+			Token t = lexer.nextToken();
+			while ( t.getType()!=Token.EOF ) {
+				chunkTokens.add(t);
+				t = lexer.nextToken();
+			}
+			c.eof = t;
+			c.endLine = chunkInput.getLine();
+			c.endCharPositionInLine = chunkInput.getCharPositionInLine();
+			c.tokens = chunkTokens;
+		}
+		finally {
+			releaseLexer(lexer);
+		}
+	}
+
+	/** Relex the full input from a's last token; we must get that token
+	 *  back and then b's first token (or, if b is all skipped input, a
+	 *  token past b).
+	 */
+	protected boolean isTokenBoundary(Chunk a, Chunk b) {
+		if ( a.errors.size()>0 && !a.errorsChecked ) {
+			return false; // might be from lexing into the split
+		}
+		int resume = a.start;
+		Token last = null;
+		if ( a.tokens.size()>0 ) {
+			last = (Token)a.tokens.get(a.tokens.size()-1);
+			resume = startIndex(last);
+		}
+		Lexer lexer = takeLexer();
+		try {
+			lexer.setCharStream(newChunkStream(resume, input.size()));
+			lexer.deferredErrors = new ArrayList(); // just checking
+			Token t = lexer.nextToken();
+			if ( last!=null ) {
+				if ( !sameToken(last, t) ) {
+					return false;
+				}
+				t = lexer.nextToken();
+			}
+			if ( b.tokens.size()>0 ) {
+				return sameToken((Token)b.tokens.get(0), t);
+			}
+			return t.getType()==Token.EOF || startIndex(t)>=b.stop;
+		}
+		finally {
+			releaseLexer(lexer);
+		}
+	}
+
+	/** Where t starts in input or -1 if t's not a CommonToken */
+	protected int startIndex(Token t) {
+		if ( t instanceof CommonToken ) {
+			return ((CommonToken)t).getStartIndex();
+		}
+		return -1;
+	}
+
+	protected boolean sameToken(Token expected, Token found) {
+		return expected.getType()==found.getType() &&
+			   expected.getChannel()==found.getChannel() &&
+			   startIndex(expected)==startIndex(found) &&
+			   startIndex(expected)>=0 &&
+			   ((CommonToken)expected).getStopIndex()==((CommonToken)found).getStopIndex();
+	}
+
+	/** Concatenate chunk tokens, moving line/column from chunk relative
+	 *  to input relative.  Add the EOF from the last chunk.
+	 */
+	protected List stitch(List chunks) {
+		List all = new ArrayList();
+		int line = 1;
+		int charPositionInLine = 0;
+		for (int i = 0; i < chunks.size(); i++) {
+			Chunk c = (Chunk)chunks.get(i);
+			for (int j = 0; j < c.tokens.size(); j++) {
+				shift((Token)c.tokens.get(j), line, charPositionInLine);
+			}
+			for (int j = 0; j < c.errors.size(); j++) {
+				RecognitionException e = (RecognitionException)c.errors.get(j);
+				if ( e.line==1 ) {
+					e.charPositionInLine += charPositionInLine;
+				}
+				e.line += line-1;
+			}
+			all.addAll(c.tokens);
+			if ( i==chunks.size()-1 ) {
+				shift(c.eof, line, charPositionInLine);
+				all.add(c.eof);
+			}
+			if ( c.endLine>1 ) {
+				line += c.endLine-1;
+				charPositionInLine = c.endCharPositionInLine;
+			}
+			else {
+				charPositionInLine += c.endCharPositionInLine;
+			}
+		}
+		return all;
+	}
+
+	/** Report the errors from the chunks we kept, in order, on this thread */
+	protected void reportErrors(List chunks) {
+		Lexer lexer = takeLexer();
+		try {
+			lexer.setCharStream(newChunkStream(0, input.size()));
+			for (int i = 0; i < chunks.size(); i++) {
+				Chunk c = (Chunk)chunks.get(i);
+				for (int j = 0; j < c.errors.size(); j++) {
+					lexer.reportError((RecognitionException)c.errors.get(j));
+				}
+			}
+		}
+		finally {
+			releaseLexer(lexer);
+		}
+	}
+
+	protected void shift(Token t, int line, int charPositionInLine) {
+		if ( t.getLine()==1 ) {
+			t.setCharPositionInLine(t.getCharPositionInLine()+charPositionInLine);
+		}
+		t.setLine(t.getLine()+line-1);
+	}
+
+	/** A private stream over the same data as input from start to stop-1.
+	 *  Line/column start over at 1/0; stitch() fixes them up.
+	 */
+	protected CharStream newChunkStream(int start, int stop) {
+		if ( input instanceof ANTLRUTF8Stream ) {
+			ANTLRUTF8Stream utf8 = (ANTLRUTF8Stream)input;
+			ANTLRUTF8Stream s = new ANTLRUTF8Stream(utf8.data, stop);
+			s.p = start;
+			s.name = utf8.name;
+			return s;
+		}
+		ANTLRStringStream chars = (ANTLRStringStream)input;
+		ANTLRStringStream s = new ANTLRStringStream(chars.data, stop);
+		s.p = start;
+		s.name = chars.getSourceName();
+		return s;
+	}
+}
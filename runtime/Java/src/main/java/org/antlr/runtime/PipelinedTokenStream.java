@@ -0,0 +1,267 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.io.Closeable;
+import java.util.concurrent.locks.LockSupport;
+
+/** A CommonTokenStream whose token source runs on its own thread so that
+ *  lexing overlaps parsing.  The lexer thread pushes tokens into a
+ *  single-producer, single-consumer ring buffer (a Pipe) and the parser
+ *  thread pulls them out as it fetches.  Buffering, mark/rewind and
+ *  seek are exactly as in CommonTokenStream since they sit on top of
+ *  the pipe.
+ *
+ *  The lexer thread owns the lexer and its char stream; don't touch
+ *  either while parsing.  Token text is pulled from the char stream
+ *  lazily so the char stream must not change underneath already lexed
+ *  tokens (any in-memory stream is fine; UnbufferedCharStream copies
+ *  token text).  The lexer thread ends at EOF.  Call close() if you stop
+ *  parsing before EOF, say after a syntax error, so it ends right away;
+ *  a stream dropped without close() is closed when it's collected.
+ */
+public class PipelinedTokenStream extends CommonTokenStream implements Closeable {
+	public static final int DEFAULT_RING_SIZE = 1024;
+
+	/** A token source that runs another token source ahead on a daemon
+	 *  thread.  The ring is lock-free: the producer only writes tail and
+	 *  the consumer only writes head.  Each spins briefly when the ring
+	 *  is full or empty and then parks until the other side unparks it.
+	 */
+	public static class Pipe implements TokenSource, Closeable {
+		/** How many times to spin before parking */
+		public static final int SPIN_TRIES = 100;
+
+		/** Spinning only helps if the other thread is running right now */
+		protected static final boolean SPIN =
+			Runtime.getRuntime().availableProcessors()>1;
+
+		/** State shared by both threads.  The producer thread only sees
+		 *  this, never the Pipe, so an abandoned Pipe can be collected
+		 *  and close the ring from finalize().
+		 */
+		protected static class Ring implements Runnable {
+			protected TokenSource source;
+			protected Token[] tokens;
+			protected int mask;
+
+			/** Total tokens taken by the consumer; ring index is head&mask */
+			protected volatile long head = 0;
+
+			/** Total tokens added by the producer */
+			protected volatile long tail = 0;
+
+			/** Set by the producer upon failure; rethrown to the consumer */
+			protected volatile Throwable error;
+
+			protected volatile boolean closed = false;
+
+			/** Set by a thread just before it parks waiting for the other */
+			protected volatile boolean producerWaiting = false;
+			protected volatile boolean consumerWaiting = false;
+
+			protected Thread producer;
+			protected volatile Thread consumer;
+
+			public Ring(TokenSource source, int size) {
+				this.source = source;
+				tokens = new Token[size];
+				mask = size-1;
+			}
+
+			/** Lexer thread: pull tokens from source until EOF or close() */
+			public void run() {
+				try {
+					long t = tail;
+					while ( !closed ) {
+						Token token = source.nextToken();
+						int tries = 0;
+						while ( t-head>=tokens.length ) { // full
+							if ( tries<SPIN_TRIES ) {
+								tries = spin(tries);
+								continue;
+							}
+							producerWaiting = true;
+							if ( closed ) {
+								return;
+							}
+							if ( t-head>=tokens.length ) {
+								LockSupport.park(this);
+							}
+							producerWaiting = false;
+						}
+						tokens[(int)(t & mask)] = token;
+						tail = ++t; // publish token
+						wakeConsumer();
+						if ( token.getType()==Token.EOF ) {
+							return;
+						}
+					}
+				}
+				catch (Throwable e) {
+					error = e;
+					wakeConsumer();
+				}
+			}
+
+			/** Parser thread: take the next token, waiting if need be */
+			public Token take() {
+				long h = head;
+				int tries = 0;
+				while ( h==tail ) { // empty
+					if ( error!=null && h==tail ) {
+						Throwable e = error;
+						if ( e instanceof RuntimeException ) throw (RuntimeException)e;
+						if ( e instanceof Error ) throw (Error)e;
+						throw new RuntimeException(e);
+					}
+					if ( closed ) {
+						throw new IllegalStateException("token pipe is closed");
+					}
+					if ( tries<SPIN_TRIES ) {
+						tries = spin(tries);
+						continue;
+					}
+					consumer = Thread.currentThread();
+					consumerWaiting = true;
+					if ( h==tail && error==null ) {
+						LockSupport.park(this);
+					}
+					consumerWaiting = false;
+				}
+				int i = (int)(h & mask);
+				Token t = tokens[i];
+				tokens[i] = null; // let it go once the token stream drops it
+				head = h+1;
+				if ( producerWaiting ) {
+					LockSupport.unpark(producer);
+				}
+				return t;
+			}
+
+			protected void wakeConsumer() {
+				if ( consumerWaiting ) {
+					LockSupport.unpark(consumer);
+				}
+			}
+
+			/** Busy wait a moment, or yield on a single processor */
+			protected int spin(int tries) {
+				if ( !SPIN ) {
+					Thread.yield();
+				}
+				return tries+1;
+			}
+
+			public void close() {
+				closed = true;
+				LockSupport.unpark(producer);
+			}
+		}
+
+		protected Ring ring;
+
+		/** Last token handed out; we keep returning EOF once we see it */
+		protected Token eof;
+
+		/** ringSize is rounded up to a power of 2 */
+		public Pipe(TokenSource source, int ringSize) {
+			int size = 2;
+			while ( size<ringSize ) {
+				size *= 2;
+			}
+			ring = new Ring(source, size);
+			Thread producer = new Thread(ring, "PipelinedTokenStream");
+			producer.setDaemon(true);
+			ring.producer = producer;
+			producer.start();
+		}
+
+		public Token nextToken() {
+			if ( eof!=null ) {
+				return eof;
+			}
+			Token t = ring.take();
+			if ( t.getType()==Token.EOF ) {
+				eof = t;
+			}
+			return t;
+		}
+
+		/** Stop the producer; nextToken() must not be called afterwards
+		 *  unless it has already returned EOF.
+		 */
+		public void close() {
+			ring.close();
+		}
+
+		/** Don't leave the producer parked if we're dropped without close() */
+		protected void finalize() throws Throwable {
+			ring.close();
+			super.finalize();
+		}
+
+		public TokenSource getTokenSource() {
+			return ring.source;
+		}
+
+		public String getSourceName() {
+			return ring.source.getSourceName();
+		}
+	}
+
+	protected int ringSize = DEFAULT_RING_SIZE;
+
+	public PipelinedTokenStream() { ; }
+
+	public PipelinedTokenStream(TokenSource tokenSource) {
+		this(tokenSource, Token.DEFAULT_CHANNEL, DEFAULT_RING_SIZE);
+	}
+
+	public PipelinedTokenStream(TokenSource tokenSource, int channel) {
+		this(tokenSource, channel, DEFAULT_RING_SIZE);
+	}
+
+	public PipelinedTokenStream(TokenSource tokenSource, int channel, int ringSize) {
+		super(new Pipe(tokenSource, ringSize), channel);
+		this.ringSize = ringSize;
+	}
+
+	/** Stop lexing the old source and start lexing the new one */
+	public void setTokenSource(TokenSource tokenSource) {
+		close();
+		super.setTokenSource(new Pipe(tokenSource, ringSize));
+	}
+
+	/** Stop the lexer thread */
+	public void close() {
+		if ( tokenSource instanceof Pipe ) {
+			((Pipe)tokenSource).close();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+/** A bounded cache of the alternatives a DFA predicted, keyed on the
+ *  input symbols it looked at.  A decision without predicates is a
+ *  function of the next few symbols so a hit saves walking the DFA
+ *  (and the mark/rewind around it).
+ *
+ *  Keys are the next depth symbols where depth is the most any
+ *  prediction has needed so far; when a prediction needs more we start
+ *  over with the longer key.  If the input shares a key with a cached
+ *  prediction, the DFA would have taken the same path, so a hit is
+ *  always right.  Predictions needing more than MAX_DEPTH symbols
+ *  aren't cached.  The table is direct-mapped so a new entry just
+ *  evicts whatever hashed to the same slot.
+ *
+ *  Turn it on with DFA.setPredictionCacheSize().  Watch getHits() and
+ *  getMisses() to see if it's worth it for your grammar.
+ */
+public class PredictionCache {
+	public static final int MAX_DEPTH = 8;
+
+	/** MAX_DEPTH symbols per slot */
+	protected int[] keys;
+
+	/** Predicted alt per slot; 0 means empty */
+	protected int[] alts;
+
+	protected int mask;
+
+	/** How many symbols are in a key now */
+	protected int depth = 1;
+
+	/** Symbols of the current input */
+	protected int[] key = new int[MAX_DEPTH];
+
+	protected long hits;
+	protected long misses;
+
+	/** size is rounded up to a power of 2 */
+	public PredictionCache(int size) {
+		int n = 1;
+		while ( n<size ) {
+			n *= 2;
+		}
+		keys = new int[n*MAX_DEPTH];
+		alts = new int[n];
+		mask = n-1;
+	}
+
+	public int predict(DFA dfa, IntStream input)
+		throws RecognitionException
+	{
+		int slot = slot(input);
+		if ( alts[slot]!=0 && matches(slot) ) {
+			hits++;
+			return alts[slot];
+		}
+		misses++;
+		int alt = dfa.simulate(input);
+		dfa.spendWork(input);
+		if ( alt<=0 || dfa.depth>MAX_DEPTH ) {
+			return alt; // failed while backtracking or too deep to cache
+		}
+		if ( dfa.depth>depth ) {
+			clear();
+			depth = dfa.depth;
+			slot = slot(input);
+		}
+		System.arraycopy(key, 0, keys, slot*MAX_DEPTH, depth);
+		alts[slot] = alt;
+		return alt;
+	}
+
+	/** Load the key for the current input and return its slot */
+	protected int slot(IntStream input) {
+		int h = 0;
+		for (int i = 0; i < depth; i++) {
+			key[i] = input.LA(i+1);
+			h = h*31+key[i];
+		}
+		h ^= (h>>>16);
+		return h & mask;
+	}
+
+	protected boolean matches(int slot) {
+		int k = slot*MAX_DEPTH;
+		for (int i = 0; i < depth; i++) {
+			if ( keys[k+i]!=key[i] ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void clear() {
+		for (int i = 0; i < alts.length; i++) {
+			alts[i] = 0;
+		}
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public String toString() {
+		return "hits="+hits+", misses="+misses+", depth="+depth;
+	}
+}
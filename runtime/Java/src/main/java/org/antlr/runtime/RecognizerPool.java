@@ -0,0 +1,92 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+/** Hands each thread its own lexer, token stream and parser, wired
+ *  together and reset for the next input, so parsing lots of small
+ *  documents doesn't allocate recognizers, DFAs, memo tables or token
+ *  lists for each one.  For example,
+ *
+ *  RecognizerPool<TLexer,TParser> pool =
+ *      new RecognizerPool<TLexer,TParser>(new RecognizerPool.Factory<TLexer,TParser>() {
+ *          public TLexer newLexer() { return new TLexer(); }
+ *          public TParser newParser(TokenStream input) { return new TParser(input); }
+ *      });
+ *  ...
+ *  pool.get(text).parser.prog();
+ *
+ *  What get() returns is only good until the same thread calls get()
+ *  again.  Tokens and trees built from it stay valid since each input
+ *  gets its own char stream.
+ */
+public class RecognizerPool<L extends Lexer, P extends Parser> {
+	public interface Factory<L extends Lexer, P extends Parser> {
+		L newLexer();
+		P newParser(TokenStream input);
+	}
+
+	/** One thread's recognizers */
+	public static class Recognizers<L extends Lexer, P extends Parser> {
+		public final L lexer;
+		public final CommonTokenStream tokens;
+		public final P parser;
+
+		public Recognizers(Factory<L,P> factory) {
+			lexer = factory.newLexer();
+			tokens = new CommonTokenStream(lexer);
+			parser = factory.newParser(tokens);
+		}
+	}
+
+	protected final Factory<L,P> factory;
+
+	protected final ThreadLocal<Recognizers<L,P>> recognizers =
+		new ThreadLocal<Recognizers<L,P>>() {
+			protected Recognizers<L,P> initialValue() {
+				return new Recognizers<L,P>(factory);
+			}
+		};
+
+	public RecognizerPool(Factory<L,P> factory) {
+		this.factory = factory;
+	}
+
+	/** Get this thread's recognizers, reset to parse input */
+	public Recognizers<L,P> get(CharStream input) {
+		Recognizers<L,P> r = recognizers.get();
+		r.lexer.setCharStream(input);
+		r.tokens.setTokenSource(r.lexer);
+		r.parser.setTokenStream(r.tokens);
+		return r;
+	}
+
+	/** Get this thread's recognizers, reset to parse text */
+	public Recognizers<L,P> get(String text) {
+		return get(new ANTLRStringStream(text));
+	}
+}
@@ -26,6 +26,8 @@
  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */package org.antlr.runtime;
 
+import org.antlr.runtime.misc.IntIntHashMap;
+
 import java.util.Map;
 
 /** The set of fields needed by an abstract recognizer to recognize input
@@ -70,15 +72,48 @@ public class RecognizerSharedState {
 	 */
 	public int backtracking = 0;
 
-	/** An array[size num rules] of Map<Integer,Integer> that tracks
-	 *  the stop token index for each rule.  ruleMemo[ruleIndex] is
+	/** An array[size num rules] of int to int maps that track
+	 *  the stop token index for each rule.  ruleMemoTables[ruleIndex] is
 	 *  the memoization table for ruleIndex.  For key ruleStartIndex, you
 	 *  get back the stop token for associated rule or MEMO_RULE_FAILED.
 	 *
 	 *  This is only used if rule memoization is on (which it is by default).
 	 */
+	public IntIntHashMap[] ruleMemoTables;
+
+	/** Where the memo tables used to live.  Parsers generated by older
+	 *  versions of ANTLR still allocate this in their constructor; if
+	 *  ruleMemoTables is null, BaseRecognizer sizes it from this array.
+	 *  Nothing is stored in the maps.
+	 */
 	public Map[] ruleMemo;
 
+	/** Don't memoize rules starting before this token index; see
+	 *  BaseRecognizer.commitMemoization().
+	 */
+	public int ruleMemoCommitIndex = 0;
+
+	/** An array indexed by synpred rule index of maps from start index
+	 *  to 1 if the synpred matched there else 0.  Unlike ruleMemo, this
+	 *  is filled in whether or not memoize=true; see
+	 *  BaseRecognizer.memoizeSynpred().  Grows as needed.
+	 */
+	public IntIntHashMap[] synpredMemo;
+
+	/** How much more work may we do?  DFA predictions charge a unit per
+	 *  symbol they look at and synpreds charge one plus a unit per
+	 *  symbol they consume and rewind.  Set this before a parse to put
+	 *  a ceiling on the cost of backtracking; once it drops below zero
+	 *  the recognizer throws WorkBudgetExceededException.  It is not
+	 *  restored by reset().
+	 */
+	public long workBudget = Long.MAX_VALUE;
+
+	/** Set from any thread, or by a deadline, to make the recognizer
+	 *  throw ParseCancelledException at its next rule or loop iteration.
+	 */
+	public volatile boolean cancelled = false;
+
 
 	// LEXER FIELDS (must be in same state object to avoid casting
 	//               constantly in generated code and Lexer object) :(
@@ -117,6 +152,12 @@ public class RecognizerSharedState {
  	 */
 	public String text;
 
+	/** How many symbols did the last DFA prediction consume?  0 if we
+	 *  don't know, such as after a cached prediction.  Lets the lexer
+	 *  skip rematching literals the Tokens DFA already checked.
+	 */
+	public int predictedLength;
+
     public RecognizerSharedState() {;}
     
     public RecognizerSharedState(RecognizerSharedState state) {
@@ -130,15 +171,24 @@ public class RecognizerSharedState {
         this.failed = state.failed;
         this.syntaxErrors = state.syntaxErrors;
         this.backtracking = state.backtracking;
-        if ( state.ruleMemo!=null ) {
-            this.ruleMemo = new Map[state.ruleMemo.length];
-            System.arraycopy(state.ruleMemo, 0, this.ruleMemo, 0, state.ruleMemo.length);
+        if ( state.ruleMemoTables!=null ) {
+            this.ruleMemoTables = new IntIntHashMap[state.ruleMemoTables.length];
+            System.arraycopy(state.ruleMemoTables, 0, this.ruleMemoTables, 0, state.ruleMemoTables.length);
+        }
+        this.ruleMemo = state.ruleMemo;
+        this.ruleMemoCommitIndex = state.ruleMemoCommitIndex;
+        if ( state.synpredMemo!=null ) {
+            this.synpredMemo = new IntIntHashMap[state.synpredMemo.length];
+            System.arraycopy(state.synpredMemo, 0, this.synpredMemo, 0, state.synpredMemo.length);
         }
+        this.workBudget = state.workBudget;
+        this.cancelled = state.cancelled;
         this.token = state.token;
         this.tokenStartCharIndex = state.tokenStartCharIndex;
         this.tokenStartCharPositionInLine = state.tokenStartCharPositionInLine;
         this.channel = state.channel;
         this.type = state.type;
         this.text = state.text;
+        this.predictedLength = state.predictedLength;
     }
 }
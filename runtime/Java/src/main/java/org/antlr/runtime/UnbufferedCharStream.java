@@ -0,0 +1,311 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A char stream that pulls chars from a Reader on demand and keeps
+ *  only a sliding window of them: everything from the oldest live mark()
+ *  (or the char just before the current one when no marks are live) up
+ *  to the furthest lookahead.  Chars before the window are thrown away
+ *  the next time we need room, so lexing a socket or pipe takes memory
+ *  proportional to the longest token/lookahead, not to the input size.
+ *
+ *  Lexer.nextToken() holds a mark at the start of every token so the
+ *  text of the token in progress stays in the window, and as
+ *  mustCopyTokenText() says yes, Lexer.emit() copies the text into the
+ *  token since the token can't get back into the stream later.
+ *  Consequently, substring() only works within the window and you
+ *  can't seek() or rewind() to a point before it.
+ *
+ *  You can only look backwards 1 char: LA(-1).
+ *
+ *  @see ANTLRReaderStream
+ *  @see UnbufferedTokenStream
+ */
+public class UnbufferedCharStream implements TransientCharStream {
+	public static final int INITIAL_BUFFER_SIZE = 1024;
+
+	/** Where we pull chars from */
+	protected Reader input;
+
+	/** The sliding window; data[0] is char bufferStartIndex of the input */
+	protected char[] data;
+
+	/** How many chars of data are valid */
+	protected int n = 0;
+
+	/** 0..n-1 index into data of next char; data[p] is LA(1) */
+	protected int p = 0;
+
+	/** Absolute char index of data[0] */
+	protected int bufferStartIndex = 0;
+
+	/** Set once the reader has returned -1 */
+	protected boolean eof = false;
+
+	/** line number 1..n within the input */
+	protected int line = 1;
+
+	/** The index of the character relative to the beginning of the line 0..n-1 */
+	protected int charPositionInLine = 0;
+
+	/** tracks how deep mark() calls are nested */
+	protected int markDepth = 0;
+
+	/** A list of CharStreamState objects that tracks the stream state
+	 *  values line, charPositionInLine, and p (an absolute char index here)
+	 *  that can change as you move through the input stream.  Indexed
+	 *  from 1..markDepth.  A null is kept @ index 0.
+	 */
+	protected List markers;
+
+	/** Track the last mark() call result value for use in rewind(). */
+	protected int lastMarker;
+
+	/** What is name or source of this char stream? */
+	public String name;
+
+	public UnbufferedCharStream(Reader input) {
+		this(input, INITIAL_BUFFER_SIZE);
+	}
+
+	public UnbufferedCharStream(Reader input, int bufferSize) {
+		this.input = input;
+		if ( bufferSize<=0 ) {
+			bufferSize = INITIAL_BUFFER_SIZE;
+		}
+		data = new char[bufferSize];
+	}
+
+	public void consume() {
+		sync(1);
+		if ( p>=n ) {
+			return; // at EOF
+		}
+		charPositionInLine++;
+		if ( data[p]=='\n' ) {
+			line++;
+			charPositionInLine=0;
+		}
+		p++;
+	}
+
+	public int LA(int i) {
+		if ( i==0 ) {
+			return 0; // undefined
+		}
+		if ( i<0 ) {
+			if ( bufferStartIndex+p+i < 0 ) {
+				return CharStream.EOF; // invalid; no char before first char
+			}
+			if ( p+i < 0 ) {
+				throw new UnsupportedOperationException("can't look backwards more than one char in this stream");
+			}
+			return data[p+i];
+		}
+		sync(i);
+		if ( p+i-1 >= n ) {
+			return CharStream.EOF;
+		}
+		return data[p+i-1];
+	}
+
+	public int LT(int i) {
+		return LA(i);
+	}
+
+	/** Make sure we have 'need' chars from current position p unless
+	 *  the input runs out first.
+	 */
+	protected void sync(int need) {
+		while ( p+need > n && !eof ) {
+			fill();
+		}
+	}
+
+	/** Read at least one more char into the window (or hit EOF),
+	 *  first sliding everything the window no longer needs out of the
+	 *  way if the buffer is full.
+	 */
+	protected void fill() {
+		if ( n==data.length ) {
+			slide();
+		}
+		if ( n==data.length ) {
+			char[] newdata = new char[data.length*2]; // resize
+			System.arraycopy(data, 0, newdata, 0, n);
+			data = newdata;
+		}
+		try {
+			int numRead = input.read(data, n, data.length-n);
+			if ( numRead<0 ) {
+				eof = true;
+			}
+			else {
+				n += numRead;
+			}
+		}
+		catch (IOException ioe) {
+			throw new RuntimeException("can't read from "+getSourceName(), ioe);
+		}
+	}
+
+	/** Throw away chars before the oldest live marker, keeping one char
+	 *  before p so LA(-1) still works.
+	 */
+	protected void slide() {
+		int keep = p>0 ? p-1 : 0;
+		for (int i=1; i<=markDepth; i++) {
+			CharStreamState state = (CharStreamState)markers.get(i);
+			int m = state.p - bufferStartIndex;
+			if ( m<keep ) {
+				keep = m;
+			}
+		}
+		if ( keep<=0 ) {
+			return;
+		}
+		System.arraycopy(data, keep, data, 0, n-keep);
+		n -= keep;
+		p -= keep;
+		bufferStartIndex += keep;
+	}
+
+	/** Return the current input symbol index 0..n where n indicates the
+	 *  last symbol has been read.  The index is the index of char to
+	 *  be returned from LA(1).
+	 */
+	public int index() {
+		return bufferStartIndex + p;
+	}
+
+	/** The stream is of unknown size until we hit EOF; until then this is
+	 *  just how many chars we've pulled from the reader so far.
+	 */
+	public int size() {
+		return bufferStartIndex + n;
+	}
+
+	public int mark() {
+		if ( markers==null ) {
+			markers = new ArrayList();
+			markers.add(null); // depth 0 means no backtracking, leave blank
+		}
+		markDepth++;
+		CharStreamState state = null;
+		if ( markDepth>=markers.size() ) {
+			state = new CharStreamState();
+			markers.add(state);
+		}
+		else {
+			state = (CharStreamState)markers.get(markDepth);
+		}
+		state.p = index();
+		state.line = line;
+		state.charPositionInLine = charPositionInLine;
+		lastMarker = markDepth;
+		return markDepth;
+	}
+
+	public void rewind(int m) {
+		CharStreamState state = (CharStreamState)markers.get(m);
+		// restore stream state
+		seek(state.p);
+		line = state.line;
+		charPositionInLine = state.charPositionInLine;
+		release(m);
+	}
+
+	public void rewind() {
+		rewind(lastMarker);
+	}
+
+	/** Releasing a marker lets the window slide past its position */
+	public void release(int marker) {
+		// unwind any other markers made after m and release m
+		markDepth = marker;
+		// release this marker
+		markDepth--;
+	}
+
+	/** consume() ahead until p==index; can't just set p=index as we must
+	 *  update line and charPositionInLine.  Seeking backwards only works
+	 *  within the window.
+	 */
+	public void seek(int index) {
+		if ( index<=index() ) {
+			if ( index<bufferStartIndex ) {
+				throw new UnsupportedOperationException("can't seek to char "+index+
+					" before start of window at "+bufferStartIndex);
+			}
+			p = index - bufferStartIndex; // just jump; don't update stream state (line, ...)
+			return;
+		}
+		// seek forward, consume until p hits index
+		while ( index()<index && LA(1)!=CharStream.EOF ) {
+			consume();
+		}
+	}
+
+	public String substring(int start, int stop) {
+		if ( start<bufferStartIndex || stop>=bufferStartIndex+n ) {
+			throw new UnsupportedOperationException("chars "+start+".."+stop+
+				" are outside window "+bufferStartIndex+".."+(bufferStartIndex+n-1));
+		}
+		return new String(data, start-bufferStartIndex, stop-start+1);
+	}
+
+	/** The window slides past a token's text once its marker goes */
+	public boolean mustCopyTokenText() {
+		return true;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public int getCharPositionInLine() {
+		return charPositionInLine;
+	}
+
+	public void setLine(int line) {
+		this.line = line;
+	}
+
+	public void setCharPositionInLine(int pos) {
+		this.charPositionInLine = pos;
+	}
+
+	public String getSourceName() {
+		return name;
+	}
+}
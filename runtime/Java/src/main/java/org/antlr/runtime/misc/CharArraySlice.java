@@ -0,0 +1,89 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime.misc;
+
+/** A CharSequence over a region of somebody else's char[]; no chars are
+ *  copied until you call toString().  Use it to look at token text in
+ *  an ANTLRStringStream buffer without creating a String per token.
+ *
+ *  hashCode() is the same as String.hashCode() of the same chars and
+ *  equals() compares chars with another CharArraySlice.
+ */
+public class CharArraySlice implements CharSequence {
+	protected char[] data;
+	protected int offset;
+	protected int length;
+
+	public CharArraySlice(char[] data, int offset, int length) {
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public char charAt(int index) {
+		if ( index<0 || index>=length ) {
+			throw new IndexOutOfBoundsException("index "+index+" out of range 0.."+(length-1));
+		}
+		return data[offset+index];
+	}
+
+	public CharSequence subSequence(int start, int end) {
+		if ( start<0 || end>length || start>end ) {
+			throw new IndexOutOfBoundsException("range "+start+".."+end+" out of range 0.."+length);
+		}
+		return new CharArraySlice(data, offset+start, end-start);
+	}
+
+	public int hashCode() {
+		return StringTable.hash(data, offset, length);
+	}
+
+	public boolean equals(Object o) {
+		if ( !(o instanceof CharArraySlice) ) {
+			return false;
+		}
+		CharArraySlice other = (CharArraySlice)o;
+		if ( other.length!=length ) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if ( data[offset+i]!=other.data[other.offset+i] ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public String toString() {
+		return new String(data, offset, length);
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime.misc;
+
+import java.util.Arrays;
+
+/** A map from int to int that doesn't box anything: open addressing with
+ *  linear probing in two parallel int arrays.  Used for rule memoization,
+ *  which can hold millions of entries, so it also knows how to drop all
+ *  keys below some value and shrink (see removeKeysBelow()).
+ *
+ *  Keys can be anything but EMPTY.
+ */
+public class IntIntHashMap {
+	public static final int EMPTY = Integer.MIN_VALUE;
+	public static final int INITIAL_CAPACITY = 16;
+
+	protected int[] keys;
+	protected int[] values;
+	protected int size = 0;
+
+	/** Smallest key we've added since the last removeKeysBelow() */
+	protected int minKey = Integer.MAX_VALUE;
+
+	public IntIntHashMap() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/** capacity is rounded up to a power of 2 */
+	public IntIntHashMap(int capacity) {
+		int n = 2;
+		while ( n<capacity ) {
+			n *= 2;
+		}
+		keys = new int[n];
+		values = new int[n];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	/** Return the value for key or missing if it's not there */
+	public int get(int key, int missing) {
+		int mask = keys.length-1;
+		int i = hash(key) & mask;
+		while ( true ) {
+			int k = keys[i];
+			if ( k==key ) {
+				return values[i];
+			}
+			if ( k==EMPTY ) {
+				return missing;
+			}
+			i = (i+1) & mask;
+		}
+	}
+
+	public void put(int key, int value) {
+		if ( (size+1)*2>keys.length ) { // keep at most half full
+			rehash(keys.length*2);
+		}
+		int mask = keys.length-1;
+		int i = hash(key) & mask;
+		while ( keys[i]!=EMPTY && keys[i]!=key ) {
+			i = (i+1) & mask;
+		}
+		if ( keys[i]==EMPTY ) {
+			keys[i] = key;
+			size++;
+			if ( key<minKey ) {
+				minKey = key;
+			}
+		}
+		values[i] = value;
+	}
+
+	/** Remove all keys < key, shrinking the table if it's mostly empty
+	 *  afterwards.  Return how many we removed.
+	 */
+	public int removeKeysBelow(int key) {
+		if ( minKey>=key ) {
+			return 0; // nothing to do
+		}
+		int oldSize = size;
+		int capacity = keys.length;
+		int remaining = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if ( keys[i]!=EMPTY && keys[i]>=key ) {
+				remaining++;
+			}
+		}
+		if ( remaining==0 && capacity<=INITIAL_CAPACITY*8 ) {
+			clear(); // common when committing; don't churn small tables
+			return oldSize;
+		}
+		while ( capacity>INITIAL_CAPACITY && remaining*8<capacity ) {
+			capacity /= 2;
+		}
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+		minKey = Integer.MAX_VALUE;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if ( oldKeys[i]!=EMPTY && oldKeys[i]>=key ) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+		return oldSize-size;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** Remove all keys.  An empty table is left alone so wiping every
+	 *  memo table when only a few were used (as TreeFilter does per node)
+	 *  doesn't touch the others' slots.
+	 */
+	public void clear() {
+		if ( size==0 ) {
+			return;
+		}
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+		minKey = Integer.MAX_VALUE;
+	}
+
+	/** Number of slots; walk 0..capacity()-1 with keyAt()/valueAt() */
+	public int capacity() {
+		return keys.length;
+	}
+
+	/** The key in slot i or EMPTY */
+	public int keyAt(int i) {
+		return keys[i];
+	}
+
+	public int valueAt(int i) {
+		return values[i];
+	}
+
+	protected void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if ( oldKeys[i]!=EMPTY ) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	protected static int hash(int key) {
+		int h = key*0x9E3779B9; // spread sequential token indexes
+		return h ^ (h>>>16);
+	}
+}
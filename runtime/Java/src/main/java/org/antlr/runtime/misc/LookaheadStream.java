@@ -62,6 +62,7 @@ public abstract class LookaheadStream<T> extends FastQueue<T> {
         currentElementIndex = 0;
         p = 0;
         prevElement=null;        
+        markDepth = 0;
     }
     
     /** Implement nextElement to supply a stream of elements to this
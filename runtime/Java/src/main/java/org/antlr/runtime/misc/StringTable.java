@@ -0,0 +1,129 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime.misc;
+
+/** A set of unique strings that you can look up by a region of a char[]
+ *  without creating a String first, so identical token texts can share
+ *  one String object.  It's an open addressing hash table with linear
+ *  probing; nothing is ever removed except by clear().
+ *
+ *  Unlike String.intern(), the strings go away with the table.
+ */
+public class StringTable {
+	public static final int INITIAL_SIZE = 256; // must be power of 2
+
+	protected String[] table = new String[INITIAL_SIZE];
+
+	/** How many strings are in the table */
+	protected int n = 0;
+
+	/** Return the unique String with the chars in data[offset..offset+length-1],
+	 *  adding it if this is the first time we've seen it.
+	 */
+	public String intern(char[] data, int offset, int length) {
+		int mask = table.length-1;
+		int i = hash(data, offset, length) & mask;
+		String s;
+		while ( (s=table[i])!=null ) {
+			if ( matches(s, data, offset, length) ) {
+				return s;
+			}
+			i = (i+1) & mask;
+		}
+		s = new String(data, offset, length);
+		add(i, s);
+		return s;
+	}
+
+	/** Return the unique String equal to s, adding s if it's new. */
+	public String intern(String s) {
+		int mask = table.length-1;
+		int i = s.hashCode() & mask;
+		String t;
+		while ( (t=table[i])!=null ) {
+			if ( t.equals(s) ) {
+				return t;
+			}
+			i = (i+1) & mask;
+		}
+		add(i, s);
+		return s;
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public void clear() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = null;
+		}
+		n = 0;
+	}
+
+	/** Put s in empty slot i, growing when the table is half full */
+	protected void add(int i, String s) {
+		table[i] = s;
+		n++;
+		if ( n*2 > table.length ) {
+			String[] old = table;
+			table = new String[old.length*2];
+			int mask = table.length-1;
+			for (int j = 0; j < old.length; j++) {
+				String t = old[j];
+				if ( t==null ) continue;
+				int k = t.hashCode() & mask;
+				while ( table[k]!=null ) {
+					k = (k+1) & mask;
+				}
+				table[k] = t;
+			}
+		}
+	}
+
+	protected static boolean matches(String s, char[] data, int offset, int length) {
+		if ( s.length()!=length ) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if ( s.charAt(i)!=data[offset+i] ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Same value as String.hashCode() for the same chars */
+	public static int hash(char[] data, int offset, int length) {
+		int h = 0;
+		for (int i = 0; i < length; i++) {
+			h = 31*h + data[offset+i];
+		}
+		return h;
+	}
+}
@@ -0,0 +1,608 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime.tree;
+
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenStream;
+
+/** A TreeAdaptor whose nodes are not objects at all.  A node is an int
+ *  handle into parallel arrays held by the adaptor (type, token, parent,
+ *  first child, next sibling, ...) and the adaptor hands it around as
+ *  an Integer.  Each handle is boxed once, the first time it's handed
+ *  out, and that Integer is kept in a table and reused; so, once the
+ *  arrays have grown, building a tree allocates one small Integer per
+ *  node and the nodes point at nothing the collector has to trace.  A
+ *  node costs 48 bytes of arrays plus its Integer whatever its shape.
+ *  Tokens are referred to by stream index just as in CompactTreeAdaptor.
+ *
+ *  Use it like any other adaptor and use the same adaptor for the node
+ *  streams of tree parsers that walk the tree:
+ *
+ *    ArenaTreeAdaptor adaptor = new ArenaTreeAdaptor(tokens);
+ *    parser.setTreeAdaptor(adaptor);
+ *    Object t = parser.prog().getTree();
+ *    CommonTreeNodeStream nodes = new CommonTreeNodeStream(adaptor, t);
+ *
+ *  Grammars must leave ASTLabelType at Object since there is no node
+ *  class to cast to.  A node is always the same Integer so == works on
+ *  nodes, but as the handle of a node in one adaptor means nothing to
+ *  another, trees can't be mixed across adaptors.  The arena only grows,
+ *  except that nil roots passed to rulePostProcessing() are recycled;
+ *  call clear() to reuse it for a new tree.
+ */
+public class ArenaTreeAdaptor extends CompactTreeAdaptor {
+	/** No node; the parent of a root, the sibling of a last child, ... */
+	public static final int NONE = -1;
+
+	public static final int DEFAULT_INITIAL_SIZE = 1024;
+
+	protected int[] type;
+	protected int[] token;
+	protected int[] startIndex;
+	protected int[] stopIndex;
+	protected int[] parent;
+	protected int[] firstChild;
+	protected int[] lastChild;
+	protected int[] nextSibling;
+	protected int[] childIndex;
+	protected int[] childCount;
+
+	/** The child of each node getChild() last stopped at, so that
+	 *  walking children in order doesn't walk the sibling list from the
+	 *  start each time.
+	 */
+	protected int[] lastVisitedChild;
+
+	/** The Integer node() hands out for each handle; null until asked */
+	protected Integer[] handles;
+
+	/** How many handles are in use or free */
+	protected int n = 0;
+
+	/** Recycled nodes, linked by nextSibling */
+	protected int free = NONE;
+
+	public ArenaTreeAdaptor(TokenStream tokens) {
+		this(tokens, DEFAULT_INITIAL_SIZE);
+	}
+
+	public ArenaTreeAdaptor(TokenStream tokens, int initialSize) {
+		super(tokens);
+		allocate(Math.max(initialSize, 16));
+	}
+
+	protected void allocate(int size) {
+		type = grow(type, size);
+		token = grow(token, size);
+		startIndex = grow(startIndex, size);
+		stopIndex = grow(stopIndex, size);
+		parent = grow(parent, size);
+		firstChild = grow(firstChild, size);
+		lastChild = grow(lastChild, size);
+		nextSibling = grow(nextSibling, size);
+		childIndex = grow(childIndex, size);
+		childCount = grow(childCount, size);
+		lastVisitedChild = grow(lastVisitedChild, size);
+		Integer[] h = new Integer[size];
+		if ( handles!=null ) {
+			System.arraycopy(handles, 0, h, 0, n);
+		}
+		handles = h;
+	}
+
+	protected int[] grow(int[] a, int size) {
+		int[] b = new int[size];
+		if ( a!=null ) {
+			System.arraycopy(a, 0, b, 0, n);
+		}
+		return b;
+	}
+
+	/** Forget all nodes (and imaginary tokens); handles from before are
+	 *  invalid after this.
+	 */
+	public void clear() {
+		n = 0;
+		free = NONE;
+		otherTokens.clear();
+	}
+
+	/** Number of nodes allocated so far, including recycled ones */
+	public int size() {
+		return n;
+	}
+
+	public int handle(Object t) {
+		return ((Integer)t).intValue();
+	}
+
+	public Object node(int h) {
+		if ( h==NONE ) {
+			return null;
+		}
+		Integer t = handles[h];
+		if ( t==null ) {
+			t = Integer.valueOf(h);
+			handles[h] = t;
+		}
+		return t;
+	}
+
+	protected int newNode(int ttype, int tokenHandle) {
+		int h;
+		if ( free!=NONE ) {
+			h = free;
+			free = nextSibling[h];
+		}
+		else {
+			if ( n==type.length ) {
+				allocate(2*n);
+			}
+			h = n++;
+		}
+		type[h] = ttype;
+		token[h] = tokenHandle;
+		startIndex[h] = -1;
+		stopIndex[h] = -1;
+		parent[h] = NONE;
+		firstChild[h] = NONE;
+		lastChild[h] = NONE;
+		nextSibling[h] = NONE;
+		childIndex[h] = -1;
+		childCount[h] = 0;
+		lastVisitedChild[h] = NONE;
+		return h;
+	}
+
+	protected void release(int h) {
+		nextSibling[h] = free;
+		free = h;
+	}
+
+	public Object create(Token payload) {
+		if ( payload==null ) {
+			return node(newNode(Token.INVALID_TOKEN_TYPE, CompactTree.NO_TOKEN));
+		}
+		return node(newNode(payload.getType(), getTokenHandle(payload)));
+	}
+
+	public Object dupNode(Object t) {
+		if ( t==null ) return null;
+		int h = handle(t);
+		int d = newNode(type[h], token[h]);
+		startIndex[d] = startIndex[h];
+		stopIndex[d] = stopIndex[h];
+		return node(d);
+	}
+
+	public Object dupTree(Object t, Object parent) {
+		if ( t==null ) {
+			return null;
+		}
+		return node(dupTree(handle(t)));
+	}
+
+	protected int dupTree(int h) {
+		int d = handle(dupNode(node(h)));
+		for (int c = firstChild[h]; c!=NONE; c = nextSibling[c]) {
+			append(d, dupTree(c));
+		}
+		return d;
+	}
+
+	/** An error node covers start..stop; its token is start */
+	public Object errorNode(TokenStream input, Token start, Token stop,
+							RecognitionException e)
+	{
+		if ( stop==null || stop.getTokenIndex()<start.getTokenIndex() ) {
+			stop = start;
+		}
+		int h = newNode(Token.INVALID_TOKEN_TYPE, getTokenHandle(start));
+		startIndex[h] = start.getTokenIndex();
+		stopIndex[h] = stop.getTokenIndex();
+		return node(h);
+	}
+
+	public boolean isNil(Object t) {
+		return token[handle(t)]==CompactTree.NO_TOKEN;
+	}
+
+	/** Make c the last child of p; c must not be in a child list */
+	protected void append(int p, int c) {
+		parent[c] = p;
+		nextSibling[c] = NONE;
+		childIndex[c] = childCount[p];
+		if ( lastChild[p]==NONE ) {
+			firstChild[p] = c;
+		}
+		else {
+			nextSibling[lastChild[p]] = c;
+		}
+		lastChild[p] = c;
+		childCount[p]++;
+	}
+
+	/** Empty p's child list without touching the children */
+	protected void clearChildren(int p) {
+		firstChild[p] = NONE;
+		lastChild[p] = NONE;
+		childCount[p] = 0;
+		lastVisitedChild[p] = NONE;
+	}
+
+	/** The i-th child of p or NONE */
+	protected int childAt(int p, int i) {
+		if ( i<0 || i>=childCount[p] ) {
+			return NONE;
+		}
+		if ( i==childCount[p]-1 ) {
+			return lastChild[p];
+		}
+		int c = lastVisitedChild[p];
+		if ( c==NONE || childIndex[c]>i ) {
+			c = firstChild[p];
+		}
+		while ( childIndex[c]<i ) {
+			c = nextSibling[c];
+		}
+		lastVisitedChild[p] = c;
+		return c;
+	}
+
+	/** Take c out of its parent's child list, if it's in one */
+	protected void detach(int c) {
+		int p = parent[c];
+		if ( p==NONE ) {
+			return;
+		}
+		parent[c] = NONE;
+		int i = childIndex[c];
+		if ( childAt(p, i)!=c ) {
+			return; // parent was set but c never added, as dupTree does
+		}
+		int prev = childAt(p, i-1);
+		int next = nextSibling[c];
+		if ( prev==NONE ) {
+			firstChild[p] = next;
+		}
+		else {
+			nextSibling[prev] = next;
+		}
+		if ( lastChild[p]==c ) {
+			lastChild[p] = prev;
+		}
+		for (int s = next; s!=NONE; s = nextSibling[s]) {
+			childIndex[s]--;
+		}
+		childCount[p]--;
+		lastVisitedChild[p] = NONE;
+		nextSibling[c] = NONE;
+		childIndex[c] = -1;
+	}
+
+	/** Add child to t; if child is nil, move its children to t instead */
+	public void addChild(Object t, Object child) {
+		if ( t==null || child==null ) {
+			return;
+		}
+		int p = handle(t);
+		int c = handle(child);
+		if ( isNil(child) ) {
+			if ( c==p ) {
+				throw new RuntimeException("attempt to add child list to itself");
+			}
+			int k = firstChild[c];
+			clearChildren(c);
+			while ( k!=NONE ) {
+				int next = nextSibling[k];
+				append(p, k);
+				k = next;
+			}
+		}
+		else {
+			detach(c);
+			append(p, c);
+		}
+	}
+
+	/** See BaseTreeAdaptor.becomeRoot() */
+	public Object becomeRoot(Object newRoot, Object oldRoot) {
+		if ( oldRoot==null ) {
+			return newRoot;
+		}
+		int r = handle(newRoot);
+		// handle ^(nil real-node)
+		if ( isNil(newRoot) ) {
+			int nc = childCount[r];
+			if ( nc==1 ) {
+				int c = firstChild[r];
+				detach(c);
+				r = c;
+			}
+			else if ( nc>1 ) {
+				throw new RuntimeException("more than one node as root (TODO: make exception hierarchy)");
+			}
+		}
+		Object root = node(r);
+		addChild(root, oldRoot);
+		return root;
+	}
+
+	/** Transform ^(nil x) to x and nil to null, recycling the nil node */
+	public Object rulePostProcessing(Object root) {
+		if ( root==null || !isNil(root) ) {
+			return root;
+		}
+		int r = handle(root);
+		if ( childCount[r]>1 ) {
+			return root;
+		}
+		int c = firstChild[r];
+		if ( c!=NONE ) {
+			// whoever invokes rule will set parent and child index
+			parent[c] = NONE;
+			childIndex[c] = -1;
+			nextSibling[c] = NONE;
+		}
+		clearChildren(r);
+		release(r);
+		return node(c);
+	}
+
+	public Token getToken(Object t) {
+		if ( t==null ) return null;
+		return getToken(token[handle(t)]);
+	}
+
+	public int getType(Object t) {
+		if ( t==null ) return Token.INVALID_TOKEN_TYPE;
+		return type[handle(t)];
+	}
+
+	public void setType(Object t, int type) {
+		this.type[handle(t)] = type;
+	}
+
+	public String getText(Object t) {
+		Token tok = getToken(t);
+		if ( tok==null ) {
+			return null;
+		}
+		return tok.getText();
+	}
+
+	/** Give t a copy of its token with this text */
+	public void setText(Object t, String text) {
+		int h = handle(t);
+		Token copy = token[h]==CompactTree.NO_TOKEN ?
+			createToken(type[h], text) : createToken(getToken(token[h]));
+		copy.setText(text);
+		token[h] = getTokenHandle(copy);
+	}
+
+	public void setTokenBoundaries(Object t, Token startToken, Token stopToken) {
+		if ( t==null ) return;
+		int start = 0;
+		int stop = 0;
+		if ( startToken!=null ) start = startToken.getTokenIndex();
+		if ( stopToken!=null ) stop = stopToken.getTokenIndex();
+		int h = handle(t);
+		startIndex[h] = start;
+		stopIndex[h] = stop;
+	}
+
+	public int getTokenStartIndex(Object t) {
+		if ( t==null ) return -1;
+		int h = handle(t);
+		if ( startIndex[h]==-1 && token[h]!=CompactTree.NO_TOKEN ) {
+			return getTokenIndex(token[h]);
+		}
+		return startIndex[h];
+	}
+
+	public int getTokenStopIndex(Object t) {
+		if ( t==null ) return -1;
+		int h = handle(t);
+		if ( stopIndex[h]==-1 && token[h]!=CompactTree.NO_TOKEN ) {
+			return getTokenIndex(token[h]);
+		}
+		return stopIndex[h];
+	}
+
+	public Object getChild(Object t, int i) {
+		if ( t==null ) return null;
+		return node(childAt(handle(t), i));
+	}
+
+	public void setChild(Object t, int i, Object child) {
+		if ( child==null ) {
+			return;
+		}
+		if ( isNil(child) ) {
+			throw new IllegalArgumentException("Can't set single child to a list");
+		}
+		int p = handle(t);
+		int c = handle(child);
+		if ( childAt(p, i)==c ) {
+			return;
+		}
+		detach(c);
+		int old = childAt(p, i);
+		if ( old==NONE ) {
+			throw new IndexOutOfBoundsException("no child "+i);
+		}
+		nextSibling[c] = nextSibling[old];
+		if ( i==0 ) {
+			firstChild[p] = c;
+		}
+		else {
+			nextSibling[childAt(p, i-1)] = c;
+		}
+		if ( lastChild[p]==old ) {
+			lastChild[p] = c;
+		}
+		parent[c] = p;
+		childIndex[c] = i;
+		lastVisitedChild[p] = c;
+		parent[old] = NONE;
+		nextSibling[old] = NONE;
+		childIndex[old] = -1;
+	}
+
+	public Object deleteChild(Object t, int i) {
+		int c = childAt(handle(t), i);
+		if ( c==NONE ) {
+			return null;
+		}
+		detach(c);
+		return node(c);
+	}
+
+	public int getChildCount(Object t) {
+		if ( t==null ) return 0;
+		return childCount[handle(t)];
+	}
+
+	public Object getParent(Object t) {
+		if ( t==null ) return null;
+		return node(parent[handle(t)]);
+	}
+
+	public void setParent(Object t, Object parent) {
+		if ( t!=null ) this.parent[handle(t)] = parent==null ? NONE : handle(parent);
+	}
+
+	public int getChildIndex(Object t) {
+		if ( t==null ) return 0;
+		int h = handle(t);
+		if ( parent[h]!=NONE ) {
+			lastVisitedChild[parent[h]] = h; // likely to want next sibling
+		}
+		return childIndex[h];
+	}
+
+	public void setChildIndex(Object t, int index) {
+		if ( t!=null ) childIndex[handle(t)] = index;
+	}
+
+	/** Delete children from start to stop and replace with t even if t is
+	 *  a list (nil-root tree).  num of children can increase or decrease.
+	 */
+	public void replaceChildren(Object parent, int startChildIndex, int stopChildIndex, Object t) {
+		if ( parent==null ) {
+			return;
+		}
+		int p = handle(parent);
+		int count = childCount[p];
+		if ( startChildIndex<0 || stopChildIndex>=count || startChildIndex>stopChildIndex+1 ) {
+			throw new IllegalArgumentException("indexes invalid; "+count+" children");
+		}
+		int[] newChildren;
+		int r = handle(t);
+		if ( isNil(t) ) {
+			newChildren = new int[childCount[r]];
+			int i = 0;
+			for (int c = firstChild[r]; c!=NONE; c = nextSibling[c]) {
+				newChildren[i++] = c;
+			}
+			clearChildren(r);
+		}
+		else {
+			if ( this.parent[r]!=p ) {
+				detach(r);
+			}
+			newChildren = new int[] {r};
+		}
+		int[] oldChildren = new int[count];
+		int i = 0;
+		for (int c = firstChild[p]; c!=NONE; c = nextSibling[c]) {
+			oldChildren[i++] = c;
+		}
+		clearChildren(p);
+		for (i = 0; i < startChildIndex; i++) {
+			append(p, oldChildren[i]);
+		}
+		for (i = startChildIndex; i <= stopChildIndex; i++) {
+			int c = oldChildren[i];
+			this.parent[c] = NONE;
+			nextSibling[c] = NONE;
+			childIndex[c] = -1;
+		}
+		for (i = 0; i < newChildren.length; i++) {
+			append(p, newChildren[i]);
+		}
+		for (i = stopChildIndex+1; i < count; i++) {
+			append(p, oldChildren[i]);
+		}
+	}
+
+	/** Print out a whole tree in LISP form like CommonTree.toStringTree() */
+	public String toStringTree(Object t) {
+		if ( t==null ) {
+			return "null";
+		}
+		StringBuffer buf = new StringBuffer();
+		toStringTree(handle(t), buf);
+		return buf.toString();
+	}
+
+	protected void toStringTree(int h, StringBuffer buf) {
+		Object t = node(h);
+		if ( childCount[h]==0 ) {
+			buf.append(toString(t));
+			return;
+		}
+		boolean nil = isNil(t);
+		if ( !nil ) {
+			buf.append("(");
+			buf.append(toString(t));
+			buf.append(' ');
+		}
+		for (int c = firstChild[h]; c!=NONE; c = nextSibling[c]) {
+			if ( c!=firstChild[h] ) {
+				buf.append(' ');
+			}
+			toStringTree(c, buf);
+		}
+		if ( !nil ) {
+			buf.append(")");
+		}
+	}
+
+	/** The text of node t as CommonTree.toString() would give it */
+	public String toString(Object t) {
+		if ( isNil(t) ) {
+			return "nil";
+		}
+		if ( getType(t)==Token.INVALID_TOKEN_TYPE ) {
+			return "<errornode>";
+		}
+		return getText(t);
+	}
+}
@@ -183,8 +183,7 @@ public abstract class BaseTreeAdaptor implements TreeAdaptor {
 		fromToken = createToken(fromToken);
 		//((ClassicToken)fromToken).setType(tokenType);
 		fromToken.setType(tokenType);
-		Tree t = (Tree)create(fromToken);
-		return t;
+		return create(fromToken);
 	}
 
 	public Object create(int tokenType, Token fromToken, String text) {
@@ -192,14 +191,12 @@ public abstract class BaseTreeAdaptor implements TreeAdaptor {
 		fromToken = createToken(fromToken);
 		fromToken.setType(tokenType);
 		fromToken.setText(text);
-		Tree t = (Tree)create(fromToken);
-		return t;
+		return create(fromToken);
 	}
 
 	public Object create(int tokenType, String text) {
 		Token fromToken = createToken(tokenType, text);
-		Tree t = (Tree)create(fromToken);
-		return t;
+		return create(fromToken);
 	}
 
 	public int getType(Object t) {
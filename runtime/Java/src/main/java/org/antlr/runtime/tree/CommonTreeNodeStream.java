@@ -76,6 +76,13 @@ public class CommonTreeNodeStream extends LookaheadStream<Object> implements Tre
         level = 0;
         if ( calls != null ) calls.clear();
     }
+
+    /** Start over on another tree so one stream can serve many trees */
+    public void reset(Object tree) {
+        root = tree;
+        it.reset(tree);
+        reset();
+    }
     
     /** Pull elements from tree iterator.  Track tree level 0..max_level.
      *  If nil rooted tree, don't give initial nil and DOWN nor final UP.
@@ -0,0 +1,389 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime.tree;
+
+import org.antlr.runtime.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A tree node for big ASTs, built by CompactTreeAdaptor.  Where a
+ *  CommonTree leaf holds a Token and every parent an ArrayList, this
+ *  node holds the token type and an int handle the adaptor resolves to
+ *  a token: an index into the parser's token stream or into a short
+ *  list of tokens the adaptor made for imaginary nodes.  Children sit
+ *  in a plain array, trimmed to size when the rule that built the
+ *  node finishes.  A node takes 40 bytes on a typical 64-bit VM with
+ *  compressed pointers; pair it with CompactTokenStream to drop the
+ *  Token objects too.
+ *
+ *  Nodes don't store their child index; getChildIndex() finds the node
+ *  among its parent's children.  That only happens when rewriting.
+ */
+public class CompactTree implements Tree {
+	/** Handle of nil nodes, which have no token */
+	public static final int NO_TOKEN = -1;
+
+	protected CompactTreeAdaptor adaptor;
+
+	protected int type;
+
+	/** Token index into adaptor's token stream if >=0; see
+	 *  CompactTreeAdaptor.getToken(int).
+	 */
+	protected int token;
+
+	/** What token indexes bracket all tokens associated with this node
+	 *  and below?  -1 means use token's index.
+	 */
+	protected int startIndex=-1, stopIndex=-1;
+
+	protected CompactTree parent;
+
+	/** Children 0..getChildCount()-1 followed by room to grow (nulls) */
+	protected CompactTree[] children;
+
+	public CompactTree(CompactTreeAdaptor adaptor, int type, int token) {
+		this.adaptor = adaptor;
+		this.type = type;
+		this.token = token;
+	}
+
+	public CompactTree(CompactTree node) {
+		this(node.adaptor, node.type, node.token);
+		this.startIndex = node.startIndex;
+		this.stopIndex = node.stopIndex;
+	}
+
+	public Tree dupNode() {
+		return new CompactTree(this);
+	}
+
+	/** The handle of this node's token for CompactTreeAdaptor */
+	public int getTokenHandle() {
+		return token;
+	}
+
+	public Token getToken() {
+		return adaptor.getToken(token);
+	}
+
+	public boolean isNil() {
+		return token==NO_TOKEN;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public void setType(int type) {
+		this.type = type;
+	}
+
+	public String getText() {
+		Token t = getToken();
+		if ( t==null ) {
+			return null;
+		}
+		return t.getText();
+	}
+
+	public int getLine() {
+		Token t = getToken();
+		if ( t==null || t.getLine()==0 ) {
+			if ( getChildCount()>0 ) {
+				return getChild(0).getLine();
+			}
+			return 0;
+		}
+		return t.getLine();
+	}
+
+	public int getCharPositionInLine() {
+		Token t = getToken();
+		if ( t==null || t.getCharPositionInLine()==-1 ) {
+			if ( getChildCount()>0 ) {
+				return getChild(0).getCharPositionInLine();
+			}
+			return 0;
+		}
+		return t.getCharPositionInLine();
+	}
+
+	public int getTokenStartIndex() {
+		if ( startIndex==-1 && token!=NO_TOKEN ) {
+			return adaptor.getTokenIndex(token);
+		}
+		return startIndex;
+	}
+
+	public void setTokenStartIndex(int index) {
+		startIndex = index;
+	}
+
+	public int getTokenStopIndex() {
+		if ( stopIndex==-1 && token!=NO_TOKEN ) {
+			return adaptor.getTokenIndex(token);
+		}
+		return stopIndex;
+	}
+
+	public void setTokenStopIndex(int index) {
+		stopIndex = index;
+	}
+
+	public Tree getChild(int i) {
+		if ( children==null || i>=children.length ) {
+			return null;
+		}
+		return children[i];
+	}
+
+	public int getChildCount() {
+		if ( children==null ) {
+			return 0;
+		}
+		int n = children.length;
+		if ( n==0 || children[n-1]!=null ) {
+			return n; // full, the usual case once trimmed
+		}
+		// binary search for the first empty slot
+		int lo = 0;
+		int hi = n-1;
+		while ( lo<hi ) {
+			int mid = (lo+hi) >>> 1;
+			if ( children[mid]!=null ) {
+				lo = mid+1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/** Shrink the children array to fit; the adaptor calls this once a
+	 *  rule is done adding children to its root.
+	 */
+	public void trimChildren() {
+		int n = getChildCount();
+		if ( children!=null && n<children.length ) {
+			CompactTree[] a = new CompactTree[n];
+			System.arraycopy(children, 0, a, 0, n);
+			children = a;
+		}
+	}
+
+	/** Make room for at least more new children */
+	protected void ensureCapacity(int n, int more) {
+		if ( children==null ) {
+			children = new CompactTree[more];
+		}
+		else if ( n+more>children.length ) {
+			CompactTree[] a = new CompactTree[Math.max(n+more, 2*n)];
+			System.arraycopy(children, 0, a, 0, n);
+			children = a;
+		}
+	}
+
+	/** Add t as a child; if t is nil, add its children instead */
+	public void addChild(Tree t) {
+		if ( t==null ) {
+			return; // do nothing upon addChild(null)
+		}
+		CompactTree childTree = (CompactTree)t;
+		int n = getChildCount();
+		if ( childTree.isNil() ) { // t is an empty node possibly with children
+			if ( childTree==this ) {
+				throw new RuntimeException("attempt to add child list to itself");
+			}
+			int m = childTree.getChildCount();
+			if ( m==0 ) {
+				return;
+			}
+			ensureCapacity(n, m);
+			for (int i = 0; i < m; i++) {
+				CompactTree c = childTree.children[i];
+				children[n+i] = c;
+				c.parent = this;
+			}
+		}
+		else {
+			ensureCapacity(n, 1);
+			children[n] = childTree;
+			childTree.parent = this;
+		}
+	}
+
+	public void setChild(int i, Tree t) {
+		if ( t==null ) {
+			return;
+		}
+		if ( t.isNil() ) {
+			throw new IllegalArgumentException("Can't set single child to a list");
+		}
+		if ( children==null || i>=getChildCount() ) {
+			throw new IndexOutOfBoundsException("no child "+i);
+		}
+		children[i] = (CompactTree)t;
+		children[i].parent = this;
+	}
+
+	public Object deleteChild(int i) {
+		int n = getChildCount();
+		if ( i<0 || i>=n ) {
+			return null;
+		}
+		CompactTree killed = children[i];
+		CompactTree[] a = new CompactTree[n-1];
+		System.arraycopy(children, 0, a, 0, i);
+		System.arraycopy(children, i+1, a, i, n-i-1);
+		children = a;
+		return killed;
+	}
+
+	/** Delete children from start to stop and replace with t even if t is
+	 *  a list (nil-root tree).  num of children can increase or decrease.
+	 */
+	public void replaceChildren(int startChildIndex, int stopChildIndex, Object t) {
+		if ( children==null ) {
+			throw new IllegalArgumentException("indexes invalid; no children in list");
+		}
+		CompactTree newTree = (CompactTree)t;
+		CompactTree[] newChildren;
+		if ( newTree.isNil() ) {
+			newChildren = new CompactTree[newTree.getChildCount()];
+			if ( newChildren.length>0 ) {
+				System.arraycopy(newTree.children, 0, newChildren, 0, newChildren.length);
+			}
+		}
+		else {
+			newChildren = new CompactTree[] {newTree};
+		}
+		int n = getChildCount();
+		int m = newChildren.length;
+		int tail = n-stopChildIndex-1;
+		CompactTree[] a = new CompactTree[startChildIndex+m+tail];
+		System.arraycopy(children, 0, a, 0, startChildIndex);
+		System.arraycopy(newChildren, 0, a, startChildIndex, m);
+		System.arraycopy(children, stopChildIndex+1, a, startChildIndex+m, tail);
+		children = a;
+		for (int i = 0; i < m; i++) {
+			newChildren[i].parent = this;
+		}
+	}
+
+	/** Child indexes aren't stored; just set the parent of each child */
+	public void freshenParentAndChildIndexes() {
+		int n = getChildCount();
+		for (int c = 0; c < n; c++) {
+			children[c].parent = this;
+		}
+	}
+
+	/** Find this node among its parent's children; -1 if no parent */
+	public int getChildIndex() {
+		if ( parent==null ) {
+			return -1;
+		}
+		CompactTree[] kids = parent.children;
+		for (int i = 0; kids!=null && i < kids.length; i++) {
+			if ( kids[i]==this ) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** Child indexes follow from the parent's children; nothing to set */
+	public void setChildIndex(int index) {
+	}
+
+	public Tree getParent() {
+		return parent;
+	}
+
+	public void setParent(Tree t) {
+		this.parent = (CompactTree)t;
+	}
+
+	public boolean hasAncestor(int ttype) { return getAncestor(ttype)!=null; }
+
+	public Tree getAncestor(int ttype) {
+		Tree t = getParent();
+		while ( t!=null ) {
+			if ( t.getType()==ttype ) return t;
+			t = t.getParent();
+		}
+		return null;
+	}
+
+	public List getAncestors() {
+		if ( getParent()==null ) return null;
+		List ancestors = new ArrayList();
+		Tree t = getParent();
+		while ( t!=null ) {
+			ancestors.add(0, t); // insert at start
+			t = t.getParent();
+		}
+		return ancestors;
+	}
+
+	public String toStringTree() {
+		int n = getChildCount();
+		if ( n==0 ) {
+			return this.toString();
+		}
+		StringBuffer buf = new StringBuffer();
+		if ( !isNil() ) {
+			buf.append("(");
+			buf.append(this.toString());
+			buf.append(' ');
+		}
+		for (int i = 0; i < n; i++) {
+			if ( i>0 ) {
+				buf.append(' ');
+			}
+			buf.append(children[i].toStringTree());
+		}
+		if ( !isNil() ) {
+			buf.append(")");
+		}
+		return buf.toString();
+	}
+
+	public String toString() {
+		if ( isNil() ) {
+			return "nil";
+		}
+		if ( getType()==Token.INVALID_TOKEN_TYPE ) {
+			return "<errornode>";
+		}
+		return getText();
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime.tree;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenStream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A TreeAdaptor that builds CompactTree nodes.  Nodes refer to tokens
+ *  of the parser's token stream by index, so the stream must be
+ *  buffered (CommonTokenStream, CompactTokenStream, ...) and must
+ *  outlive the tree.  Tokens that aren't in the stream, such as those
+ *  made for imaginary nodes or by rewrites that change a token's type
+ *  or text, are kept here in a list; a node refers to token i of that
+ *  list with handle -(i+2).
+ *
+ *  Give the parser one of these instead of a CommonTreeAdaptor:
+ *
+ *    CommonTokenStream tokens = new CommonTokenStream(lexer);
+ *    MyParser parser = new MyParser(tokens);
+ *    parser.setTreeAdaptor(new CompactTreeAdaptor(tokens));
+ *
+ *  and use the same adaptor for any CommonTreeNodeStream over the tree.
+ */
+public class CompactTreeAdaptor extends BaseTreeAdaptor {
+	protected TokenStream tokens;
+
+	/** Tokens nodes refer to that aren't in the token stream */
+	protected List<Token> otherTokens = new ArrayList<Token>();
+
+	public CompactTreeAdaptor(TokenStream tokens) {
+		this.tokens = tokens;
+	}
+
+	public TokenStream getTokenStream() {
+		return tokens;
+	}
+
+	public Object create(Token payload) {
+		if ( payload==null ) {
+			return new CompactTree(this, Token.INVALID_TOKEN_TYPE, CompactTree.NO_TOKEN);
+		}
+		return new CompactTree(this, payload.getType(), getTokenHandle(payload));
+	}
+
+	/** A node's handle for payload: its index if it is the stream's
+	 *  token at that index, else a new entry in otherTokens.
+	 */
+	protected int getTokenHandle(Token payload) {
+		int i = payload.getTokenIndex();
+		if ( tokens!=null && i>=0 && i<tokens.size() &&
+			 !(payload instanceof OtherToken) )
+		{
+			Token t = tokens.get(i);
+			if ( t==payload ||
+				 (t.getType()==payload.getType() &&
+				  t.getLine()==payload.getLine() &&
+				  t.getCharPositionInLine()==payload.getCharPositionInLine()) )
+			{
+				return i;
+			}
+		}
+		otherTokens.add(payload);
+		return -(otherTokens.size()+1);
+	}
+
+	/** The token with this handle; null for CompactTree.NO_TOKEN */
+	public Token getToken(int handle) {
+		if ( handle>=0 ) {
+			return tokens.get(handle);
+		}
+		if ( handle==CompactTree.NO_TOKEN ) {
+			return null;
+		}
+		return otherTokens.get(-handle-2);
+	}
+
+	/** The index into the token stream of the token with this handle */
+	public int getTokenIndex(int handle) {
+		if ( handle>=0 ) {
+			return handle;
+		}
+		Token t = getToken(handle);
+		return t!=null ? t.getTokenIndex() : -1;
+	}
+
+	/** Tokens we create are never in the stream even if they were
+	 *  copied from one that is; mark them so getTokenHandle() knows.
+	 */
+	protected static class OtherToken extends CommonToken {
+		public OtherToken(int type, String text) {
+			super(type, text);
+		}
+		public OtherToken(Token oldToken) {
+			super(oldToken);
+		}
+	}
+
+	public Token createToken(int tokenType, String text) {
+		return new OtherToken(tokenType, text);
+	}
+
+	public Token createToken(Token fromToken) {
+		return new OtherToken(fromToken);
+	}
+
+	public Object dupNode(Object t) {
+		if ( t==null ) return null;
+		return ((Tree)t).dupNode();
+	}
+
+	/** An error node covers start..stop; its token is start */
+	public Object errorNode(TokenStream input, Token start, Token stop,
+							RecognitionException e)
+	{
+		if ( stop==null || stop.getTokenIndex()<start.getTokenIndex() ) {
+			stop = start;
+		}
+		CompactTree t = new CompactTree(this, Token.INVALID_TOKEN_TYPE,
+										getTokenHandle(start));
+		t.setTokenStartIndex(start.getTokenIndex());
+		t.setTokenStopIndex(stop.getTokenIndex());
+		return t;
+	}
+
+	/** Transform ^(nil x) to x and nil to null, and trim the children of
+	 *  the root since the rule won't add any more.
+	 */
+	public Object rulePostProcessing(Object root) {
+		Object r = super.rulePostProcessing(root);
+		if ( r!=null ) {
+			((CompactTree)r).trimChildren();
+		}
+		return r;
+	}
+
+	public Token getToken(Object t) {
+		if ( t==null ) return null;
+		return ((CompactTree)t).getToken();
+	}
+
+	public int getType(Object t) {
+		if ( t==null ) return Token.INVALID_TOKEN_TYPE;
+		return ((CompactTree)t).type;
+	}
+
+	public void setType(Object t, int type) {
+		((CompactTree)t).type = type;
+	}
+
+	public String getText(Object t) {
+		if ( t==null ) return null;
+		return ((CompactTree)t).getText();
+	}
+
+	/** Give t a copy of its token with this text */
+	public void setText(Object t, String text) {
+		CompactTree node = (CompactTree)t;
+		Token copy = node.token==CompactTree.NO_TOKEN ?
+			createToken(node.type, text) : createToken(node.getToken());
+		copy.setText(text);
+		node.token = getTokenHandle(copy);
+	}
+
+	public void setTokenBoundaries(Object t, Token startToken, Token stopToken) {
+		if ( t==null ) return;
+		int start = 0;
+		int stop = 0;
+		if ( startToken!=null ) start = startToken.getTokenIndex();
+		if ( stopToken!=null ) stop = stopToken.getTokenIndex();
+		((Tree)t).setTokenStartIndex(start);
+		((Tree)t).setTokenStopIndex(stop);
+	}
+
+	public int getTokenStartIndex(Object t) {
+		if ( t==null ) return -1;
+		return ((Tree)t).getTokenStartIndex();
+	}
+
+	public int getTokenStopIndex(Object t) {
+		if ( t==null ) return -1;
+		return ((Tree)t).getTokenStopIndex();
+	}
+
+	public Object getChild(Object t, int i) {
+		if ( t==null ) return null;
+		return ((Tree)t).getChild(i);
+	}
+
+	public int getChildCount(Object t) {
+		if ( t==null ) return 0;
+		return ((Tree)t).getChildCount();
+	}
+
+	public Object getParent(Object t) {
+		if ( t==null ) return null;
+		return ((Tree)t).getParent();
+	}
+
+	public void setParent(Object t, Object parent) {
+		if ( t!=null ) ((Tree)t).setParent((Tree)parent);
+	}
+
+	public int getChildIndex(Object t) {
+		if ( t==null ) return 0;
+		return ((Tree)t).getChildIndex();
+	}
+
+	public void setChildIndex(Object t, int index) {
+	}
+
+	public void replaceChildren(Object parent, int startChildIndex, int stopChildIndex, Object t) {
+		if ( parent!=null ) {
+			((Tree)parent).replaceChildren(startChildIndex, stopChildIndex, t);
+		}
+	}
+}
@@ -0,0 +1,324 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime.tree;
+
+import java.util.concurrent.*;
+
+/** A TreeVisitor that walks subtrees on several threads.  You choose
+ *  the split points, a depth or node types such as top-level function
+ *  definitions; each subtree rooted at a split point is visited on a
+ *  worker thread with a plain TreeVisitor while this thread does the
+ *  nodes above them.  The actions for a worker come from the
+ *  ActionFactory, called once per thread, so a tree filter or rewriter
+ *  can have one instance (with its own RecognizerSharedState and node
+ *  stream) per thread:
+ *
+ *    ParallelTreeVisitor v = new ParallelTreeVisitor(adaptor);
+ *    v.splitAtTypes(new int[] {MyParser.FUNC});
+ *    v.visit(tree, new ParallelTreeVisitor.ActionFactory() {
+ *        public TreeVisitorAction newAction() {
+ *            MyFilter f = new MyFilter(new CommonTreeNodeStream(adaptor, tree));
+ *            return f.getDownUpActions();
+ *        }
+ *    });
+ *
+ *  Each split root is detached from its parent while its worker runs, so
+ *  a rewrite at the root (TreeRewriter's replaceChildren() on its
+ *  parent) can't touch the shared tree and node streams over the subtree
+ *  stop at its end; the results are put back in place on this thread.
+ *  If an action throws, the subtrees still being visited are cancelled
+ *  or waited for and put back before the exception is rethrown.
+ *  Actions on a subtree must only touch that subtree, and the adaptor
+ *  must be safe to use from several threads (CommonTreeAdaptor is,
+ *  ArenaTreeAdaptor isn't).  Nodes above the split points see pre() in
+ *  preorder and post() in postorder as usual, but all the pre() calls
+ *  above the split points come before any post() there, so that every
+ *  subtree is started before we wait for one.
+ */
+public class ParallelTreeVisitor extends TreeVisitor {
+	/** Create the actions for a thread; called once per thread */
+	public interface ActionFactory {
+		public TreeVisitorAction newAction();
+	}
+
+	/** A node above the split points and what became of its children:
+	 *  a Pending or a Subtree for each.
+	 */
+	protected static class Pending {
+		public Object t;
+		public boolean isNil;
+		public Object[] children;
+	}
+
+	/** A subtree at a split point, visited on the pool.  Once abandoned,
+	 *  call() leaves it alone if it hasn't started.
+	 */
+	protected class Subtree implements Callable {
+		public Object root;
+		/** What visiting root returned; root until that's done */
+		public Object result;
+		public Future future;
+		protected boolean started;
+		protected boolean finished;
+		protected boolean abandoned;
+
+		public Subtree(Object root) {
+			this.root = root;
+			this.result = root;
+		}
+
+		public Object call() {
+			synchronized (this) {
+				if ( abandoned ) {
+					return root;
+				}
+				started = true;
+			}
+			try {
+				result = visit(root, (TreeVisitorAction)actions.get());
+				return result;
+			}
+			finally {
+				synchronized (this) {
+					finished = true;
+					notifyAll();
+				}
+			}
+		}
+
+		/** Cancel the visit and, if it's already running, wait for it */
+		public synchronized void abandon() {
+			abandoned = true;
+			if ( future!=null ) {
+				future.cancel(true);
+			}
+			boolean interrupted = false;
+			while ( started && !finished ) {
+				try {
+					wait();
+				}
+				catch (InterruptedException ie) {
+					interrupted = true;
+				}
+			}
+			if ( interrupted ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	protected ExecutorService executor;
+
+	/** Split at nodes this deep (the root is at depth 0); -1 for none */
+	protected int splitDepth = -1;
+
+	/** Split at nodes of these types */
+	protected int[] splitTypes;
+
+	/** Actions for the current thread, made by the factory passed to
+	 *  the current visit
+	 */
+	protected ThreadLocal actions;
+
+	/** Visit on executor; it's not shut down when we're done */
+	public ParallelTreeVisitor(TreeAdaptor adaptor, ExecutorService executor) {
+		super(adaptor);
+		this.executor = executor;
+	}
+
+	/** Visit on a pool with a daemon thread for each processor */
+	public ParallelTreeVisitor(TreeAdaptor adaptor) {
+		this(adaptor, null);
+	}
+
+	public void splitAtDepth(int depth) {
+		this.splitDepth = depth;
+	}
+
+	public void splitAtTypes(int[] types) {
+		this.splitTypes = types;
+	}
+
+	/** Is t, depth nodes below the root, walked on its own thread?
+	 *  Override for other criteria.
+	 */
+	protected boolean isSplitPoint(Object t, int depth) {
+		if ( depth==splitDepth ) {
+			return true;
+		}
+		if ( splitTypes!=null ) {
+			int ttype = adaptor.getType(t);
+			for (int i = 0; i < splitTypes.length; i++) {
+				if ( splitTypes[i]==ttype ) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/** Visit every node in tree t, subtrees at split points in parallel,
+	 *  with actions from factory.  Return result of applying post action
+	 *  to t.
+	 */
+	public Object visit(Object t, final ActionFactory factory) {
+		actions = new ThreadLocal() {
+			protected Object initialValue() {
+				return factory.newAction();
+			}
+		};
+		if ( isSplitPoint(t, 0) ) {
+			return visit(t, (TreeVisitorAction)actions.get());
+		}
+		ExecutorService pool = executor;
+		if ( pool==null ) {
+			pool = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "ParallelTreeVisitor");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		}
+		TreeVisitorAction action = (TreeVisitorAction)actions.get();
+		Pending top = new Pending();
+		try {
+			down(pool, top, t, 0, action);
+			return up(top, action);
+		}
+		catch (RuntimeException re) {
+			abandon(top);
+			throw re;
+		}
+		catch (Error e) {
+			abandon(top);
+			throw e;
+		}
+		finally {
+			if ( executor==null ) {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/** Do pre() for t and any nodes below it above the split points,
+	 *  handing the subtrees at split points to the pool.  Fill in p as we
+	 *  go so abandon() can find everything started if pre() throws.
+	 */
+	protected void down(ExecutorService pool, Pending p, Object t, int depth,
+						TreeVisitorAction action)
+	{
+		p.t = t;
+		p.isNil = adaptor.isNil(t);
+		if ( action!=null && !p.isNil ) {
+			t = action.pre(t); // if rewritten, walk children of new t
+			p.t = t;
+		}
+		int n = adaptor.getChildCount(t);
+		p.children = new Object[n];
+		for (int i=0; i<n; i++) {
+			Object child = adaptor.getChild(t, i);
+			if ( isSplitPoint(child, depth+1) ) {
+				// cut it loose so the worker can't reach t or the other
+				// subtrees through it; up() puts the result back
+				Subtree s = new Subtree(child);
+				adaptor.setParent(child, null);
+				adaptor.setChildIndex(child, -1);
+				p.children[i] = s;
+				s.future = pool.submit(s);
+			}
+			else {
+				Pending c = new Pending();
+				p.children[i] = c;
+				down(pool, c, child, depth+1, action);
+			}
+		}
+	}
+
+	/** Wait for the subtrees below p, put the children back in place
+	 *  (split roots were detached, and may have been rewritten) and do
+	 *  post() for p.  Only the calling thread modifies nodes above the
+	 *  split points.
+	 */
+	protected Object up(Pending p, TreeVisitorAction action) {
+		Object t = p.t;
+		for (int i=0; i<p.children.length; i++) {
+			Object visitResult;
+			if ( p.children[i] instanceof Pending ) {
+				visitResult = up((Pending)p.children[i], action);
+			}
+			else {
+				visitResult = get(((Subtree)p.children[i]).future);
+			}
+			if ( p.children[i] instanceof Subtree ||
+				 visitResult != adaptor.getChild(t, i) )
+			{
+				adaptor.setChild(t, i, visitResult); // sets parent, index
+			}
+		}
+		if ( action!=null && !p.isNil ) t = action.post(t);
+		return t;
+	}
+
+	/** Something threw; cancel or wait for the subtree visits below p
+	 *  and put their roots back so the tree is whole again.
+	 */
+	protected void abandon(Pending p) {
+		if ( p.children==null ) {
+			return;
+		}
+		for (int i=0; i<p.children.length; i++) {
+			if ( p.children[i] instanceof Pending ) {
+				abandon((Pending)p.children[i]);
+			}
+			else if ( p.children[i] instanceof Subtree ) {
+				Subtree s = (Subtree)p.children[i];
+				s.abandon();
+				adaptor.setChild(p.t, i, s.result); // sets parent, index
+			}
+		}
+	}
+
+	protected Object get(Future f) {
+		try {
+			return f.get();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ie);
+		}
+		catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if ( cause instanceof RuntimeException ) throw (RuntimeException)cause;
+			if ( cause instanceof Error ) throw (Error)cause;
+			throw new RuntimeException(cause);
+		}
+	}
+}
@@ -0,0 +1,347 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.runtime.tree;
+
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenStream;
+import org.antlr.runtime.misc.IntArray;
+
+/** A node stream over a tree flattened once into arrays and shared by
+ *  any number of tree parser passes.  BufferedTreeNodeStream and
+ *  CommonTreeNodeStream walk the tree again for every pass; when a
+ *  compiler runs several tree grammars over the same tree, flatten it
+ *  once instead:
+ *
+ *    SerializedTreeNodeStream.Nodes nodes =
+ *        new SerializedTreeNodeStream.Nodes(adaptor, tree);
+ *    new Pass1(new SerializedTreeNodeStream(nodes)).prog();
+ *    new Pass2(new SerializedTreeNodeStream(nodes)).prog();
+ *
+ *  Nodes holds the token type of each element (DOWN and UP included)
+ *  in an int array next to the nodes themselves, so LA() is an array
+ *  read.  A stream only adds its position, so making one per pass is
+ *  cheap, and as nothing writes to Nodes after construction, streams
+ *  over the same Nodes may be used from different threads.
+ *
+ *  The flattened tree can't change under the streams, so tree grammars
+ *  that rewrite their input (rewrite=true) can't use this stream;
+ *  replaceChildren() throws UnsupportedOperationException.  Passes
+ *  that build new trees with output=AST are fine.
+ */
+public class SerializedTreeNodeStream implements TreeNodeStream {
+	/** The tree in stream order: types[i] is the token type of node
+	 *  nodes[i].  Built once, never modified.
+	 */
+	public static class Nodes {
+		public final TreeAdaptor adaptor;
+		public final Object root;
+		public final int[] types;
+		public final Object[] nodes;
+		public final Object down;
+		public final Object up;
+		public final Object eof;
+
+		protected int n;
+		protected int[] t;
+		protected Object[] o;
+
+		public Nodes(TreeAdaptor adaptor, Object root) {
+			this.adaptor = adaptor;
+			this.root = root;
+			down = adaptor.create(Token.DOWN, "DOWN");
+			up = adaptor.create(Token.UP, "UP");
+			eof = adaptor.create(Token.EOF, "EOF");
+			t = new int[100];
+			o = new Object[100];
+			if ( root!=null ) {
+				add(root);
+			}
+			types = new int[n];
+			nodes = new Object[n];
+			System.arraycopy(t, 0, types, 0, n);
+			System.arraycopy(o, 0, nodes, 0, n);
+			t = null;
+			o = null;
+		}
+
+		/** Add t and below; don't do DOWN, UP nodes if it's a list
+		 *  (t is isNil).
+		 */
+		protected void add(Object node) {
+			boolean nil = adaptor.isNil(node);
+			if ( !nil ) {
+				add(adaptor.getType(node), node);
+			}
+			int nc = adaptor.getChildCount(node);
+			if ( !nil && nc>0 ) {
+				add(Token.DOWN, down);
+			}
+			for (int c=0; c<nc; c++) {
+				add(adaptor.getChild(node, c));
+			}
+			if ( !nil && nc>0 ) {
+				add(Token.UP, up);
+			}
+		}
+
+		protected void add(int ttype, Object node) {
+			if ( n==t.length ) {
+				int[] t2 = new int[2*n];
+				Object[] o2 = new Object[2*n];
+				System.arraycopy(t, 0, t2, 0, n);
+				System.arraycopy(o, 0, o2, 0, n);
+				t = t2;
+				o = o2;
+			}
+			t[n] = ttype;
+			o[n] = node;
+			n++;
+		}
+
+		public int size() {
+			return types.length;
+		}
+	}
+
+	protected Nodes nodes;
+
+	/** Copies of nodes.types/nodes for quick access */
+	protected int[] types;
+	protected Object[] elements;
+
+	/** IF this tree (root) was created from a token stream, track it. */
+	protected TokenStream tokens;
+
+	/** The index into the nodes of the current node (next node
+	 *  to consume).
+	 */
+	protected int p = 0;
+
+	/** Track the last mark() call result value for use in rewind(). */
+	protected int lastMarker;
+
+	/** Stack of indexes used for push/pop calls */
+	protected IntArray calls;
+
+	public SerializedTreeNodeStream(Object tree) {
+		this(new CommonTreeAdaptor(), tree);
+	}
+
+	public SerializedTreeNodeStream(TreeAdaptor adaptor, Object tree) {
+		this(new Nodes(adaptor, tree));
+	}
+
+	public SerializedTreeNodeStream(Nodes nodes) {
+		this.nodes = nodes;
+		this.types = nodes.types;
+		this.elements = nodes.nodes;
+	}
+
+	/** The flattened tree; pass it to another stream to share it */
+	public Nodes getNodes() {
+		return nodes;
+	}
+
+	public Object get(int i) {
+		return elements[i];
+	}
+
+	public Object LT(int k) {
+		if ( k==0 ) {
+			return null;
+		}
+		if ( k<0 ) {
+			return LB(-k);
+		}
+		int i = p+k-1;
+		if ( i>=elements.length ) {
+			return nodes.eof;
+		}
+		return elements[i];
+	}
+
+	/** Look backwards k nodes */
+	protected Object LB(int k) {
+		if ( k==0 || (p-k)<0 ) {
+			return null;
+		}
+		return elements[p-k];
+	}
+
+	public int LA(int k) {
+		if ( k>0 ) {
+			int i = p+k-1;
+			return i<types.length ? types[i] : Token.EOF;
+		}
+		if ( k<0 && p+k>=0 ) {
+			return types[p+k];
+		}
+		return Token.INVALID_TOKEN_TYPE;
+	}
+
+	public Object getTreeSource() {
+		return nodes.root;
+	}
+
+	public String getSourceName() {
+		return getTokenStream().getSourceName();
+	}
+
+	public TokenStream getTokenStream() {
+		return tokens;
+	}
+
+	public void setTokenStream(TokenStream tokens) {
+		this.tokens = tokens;
+	}
+
+	public TreeAdaptor getTreeAdaptor() {
+		return nodes.adaptor;
+	}
+
+	/** The shared DOWN and UP nodes are all there is */
+	public void setUniqueNavigationNodes(boolean uniqueNavigationNodes) {
+	}
+
+	public void consume() {
+		p++;
+	}
+
+	public int mark() {
+		lastMarker = p;
+		return lastMarker;
+	}
+
+	public void release(int marker) {
+		// no resources to release
+	}
+
+	public int index() {
+		return p;
+	}
+
+	public void rewind(int marker) {
+		seek(marker);
+	}
+
+	public void rewind() {
+		seek(lastMarker);
+	}
+
+	public void seek(int index) {
+		p = index;
+	}
+
+	/** Make stream jump to a new location, saving old location.
+	 *  Switch back with pop().
+	 */
+	public void push(int index) {
+		if ( calls==null ) {
+			calls = new IntArray();
+		}
+		calls.push(p); // save current index
+		seek(index);
+	}
+
+	/** Seek back to previous index saved during last push() call.
+	 *  Return top of stack (return index).
+	 */
+	public int pop() {
+		int ret = calls.pop();
+		seek(ret);
+		return ret;
+	}
+
+	public void reset() {
+		p = 0;
+		lastMarker = 0;
+		if ( calls!=null ) {
+			calls.clear();
+		}
+	}
+
+	public int size() {
+		return types.length;
+	}
+
+	// TREE REWRITE INTERFACE
+
+	public void replaceChildren(Object parent, int startChildIndex, int stopChildIndex, Object t) {
+		throw new UnsupportedOperationException("can't rewrite a tree shared by serialized node streams");
+	}
+
+	/** Used for testing, just return the token type stream */
+	public String toTokenTypeString() {
+		StringBuffer buf = new StringBuffer();
+		for (int i = 0; i < types.length; i++) {
+			buf.append(" ");
+			buf.append(types[i]);
+		}
+		return buf.toString();
+	}
+
+	public String toString(Object start, Object stop) {
+		if ( start==null || stop==null ) {
+			return null;
+		}
+		TreeAdaptor adaptor = nodes.adaptor;
+		// if we have the token stream, use that to dump text in order
+		if ( tokens!=null ) {
+			int beginTokenIndex = adaptor.getTokenStartIndex(start);
+			int endTokenIndex = adaptor.getTokenStopIndex(stop);
+			// if it's a tree, use start/stop index from start node
+			// else use token range from start/stop nodes
+			if ( adaptor.getType(stop)==Token.UP ) {
+				endTokenIndex = adaptor.getTokenStopIndex(start);
+			}
+			else if ( adaptor.getType(stop)==Token.EOF ) {
+				endTokenIndex = size()-2; // don't use EOF
+			}
+			return tokens.toString(beginTokenIndex, endTokenIndex);
+		}
+		// walk nodes looking for start
+		int i = 0;
+		while ( i<elements.length && elements[i]!=start ) {
+			i++;
+		}
+		// now walk until we see stop, filling string buffer with text
+		StringBuffer buf = new StringBuffer();
+		for (; i<elements.length; i++) {
+			Object t = elements[i];
+			String text = adaptor.getText(t);
+			if ( text==null ) {
+				text = " "+String.valueOf(adaptor.getType(t));
+			}
+			buf.append(text);
+			if ( t==stop ) {
+				break;
+			}
+		}
+		return buf.toString();
+	}
+}
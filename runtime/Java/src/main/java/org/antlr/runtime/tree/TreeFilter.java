@@ -27,9 +27,11 @@
  */
 package org.antlr.runtime.tree;
 
+import org.antlr.runtime.BitSet;
 import org.antlr.runtime.RecognizerSharedState;
 import org.antlr.runtime.RecognitionException;
 import org.antlr.runtime.TokenStream;
+import org.antlr.runtime.misc.IntIntHashMap;
 
 /**
  Cut-n-paste from material I'm not using in the book anymore (edit later
@@ -83,6 +85,16 @@ public class TreeFilter extends TreeParser {
     protected TokenStream originalTokenStream;
     protected TreeAdaptor originalAdaptor;
 
+    /** Token types topdown() and bottomup() can match at the root of a
+     *  subtree; null means try every node.  Generated filters set these.
+     */
+    protected BitSet topdownRootTypes;
+    protected BitSet bottomupRootTypes;
+
+    /** The state and node stream applyOnce() reuses for every node */
+    protected RecognizerSharedState applyState;
+    protected CommonTreeNodeStream applyInput;
+
     public TreeFilter(TreeNodeStream input) {
         this(input, new RecognizerSharedState());
     }
@@ -94,11 +106,13 @@ public class TreeFilter extends TreeParser {
 
     public void applyOnce(Object t, fptr whichRule) {
         if ( t==null ) return;
+        BitSet rootTypes = getRootTypes(whichRule);
+        if ( rootTypes!=null && !rootTypes.member(originalAdaptor.getType(t)) ) {
+            return; // rule can't match t; don't even start
+        }
         try {
             // share TreeParser object but not parsing-related state
-            state = new RecognizerSharedState();
-            input = new CommonTreeNodeStream(originalAdaptor, t);
-            ((CommonTreeNodeStream)input).setTokenStream(originalTokenStream);
+            prepareToApply(t);
             setBacktrackingLevel(1);
             whichRule.rule();
             setBacktrackingLevel(0);
@@ -106,13 +120,49 @@ public class TreeFilter extends TreeParser {
         catch (RecognitionException e) { ; }
     }
 
+    /** Set state and input to our own state and a stream over t, made
+     *  on first call and reset after that.  A cancel(), deadline or work
+     *  budget set on the filter carries over to that state.
+     */
+    protected void prepareToApply(Object t) {
+        if ( applyState==null ) {
+            applyState = new RecognizerSharedState();
+            if ( state.ruleMemoTables!=null ) {
+                applyState.ruleMemoTables = new IntIntHashMap[state.ruleMemoTables.length];
+            }
+            applyInput = new CommonTreeNodeStream(originalAdaptor, t);
+            applyInput.setTokenStream(originalTokenStream);
+            switchState(applyState); // cancel(), deadlines and budget follow
+            input = applyInput;
+            return;
+        }
+        switchState(applyState);
+        input = applyInput;
+        applyInput.reset(t); // rewinds too
+        resetParseState(); // wipe state and memos but don't un-cancel
+    }
+
+    /** The token types whichRule can match at the root; null if any */
+    protected BitSet getRootTypes(fptr whichRule) {
+        if ( whichRule==topdown_fptr ) return topdownRootTypes;
+        if ( whichRule==bottomup_fptr ) return bottomupRootTypes;
+        return null;
+    }
+
     public void downup(Object t) {
-        TreeVisitor v = new TreeVisitor(new CommonTreeAdaptor());
-        TreeVisitorAction actions = new TreeVisitorAction() {
+        TreeVisitor v = new TreeVisitor(originalAdaptor);
+        v.visit(t, getDownUpActions());
+    }
+
+    /** The actions downup() visits with.  To filter subtrees in parallel
+     *  with a ParallelTreeVisitor, give it a new filter's actions for
+     *  each thread.
+     */
+    public TreeVisitorAction getDownUpActions() {
+        return new TreeVisitorAction() {
             public Object pre(Object t)  { applyOnce(t, topdown_fptr); return t; }
             public Object post(Object t) { applyOnce(t, bottomup_fptr); return t; }
         };
-        v.visit(t, actions);
     }
         
     fptr topdown_fptr = new fptr() {
@@ -74,12 +74,18 @@ public class TreeIterator implements Iterator {
         nodes.clear();
     }
 
+    /** Start over on another tree, keeping our DOWN, UP and EOF nodes */
+    public void reset(Object tree) {
+        root = tree;
+        reset();
+    }
+
     public boolean hasNext() {
         if ( firstTime ) return root!=null;
         if ( nodes!=null && nodes.size()>0 ) return true;
         if ( tree==null ) return false;
         if ( adaptor.getChildCount(tree)>0 ) return true;
-        return adaptor.getParent(tree)!=null; // back at root?
+        return tree!=root && adaptor.getParent(tree)!=null; // back at root?
     }
 
     public Object next() {
@@ -105,8 +111,9 @@ public class TreeIterator implements Iterator {
         }
         // if no children, look for next sibling of tree or ancestor
         Object parent = adaptor.getParent(tree);
-        // while we're out of siblings, keep popping back up towards root
-        while ( parent!=null &&
+        // while we're out of siblings, keep popping back up towards root;
+        // root may be a subtree, so don't go past it to its siblings
+        while ( tree!=root && parent!=null &&
                 adaptor.getChildIndex(tree)+1 >= adaptor.getChildCount(parent) )
         {
             nodes.add(up); // we're moving back up
@@ -114,7 +121,7 @@ public class TreeIterator implements Iterator {
             parent = adaptor.getParent(tree);
         }
         // no nodes left?
-        if ( parent==null ) {
+        if ( tree==root || parent==null ) {
             tree = null; // back at root? nothing left then
             nodes.add(eof); // add to queue, might have UP nodes in there
             return nodes.remove();
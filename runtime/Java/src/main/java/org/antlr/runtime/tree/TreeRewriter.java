@@ -27,9 +27,11 @@
  */
 package org.antlr.runtime.tree;
 
+import org.antlr.runtime.BitSet;
 import org.antlr.runtime.RecognizerSharedState;
 import org.antlr.runtime.RecognitionException;
 import org.antlr.runtime.TokenStream;
+import org.antlr.runtime.misc.IntIntHashMap;
 
 public class TreeRewriter extends TreeParser {
     public interface fptr {
@@ -40,6 +42,16 @@ public class TreeRewriter extends TreeParser {
 
     protected TokenStream originalTokenStream;
     protected TreeAdaptor originalAdaptor;
+
+    /** Token types topdown() and bottomup() can match at the root of a
+     *  subtree; null means try every node.  Generated rewriters set these.
+     */
+    protected BitSet topdownRootTypes;
+    protected BitSet bottomupRootTypes;
+
+    /** The state and node stream applyOnce() reuses for every node */
+    protected RecognizerSharedState applyState;
+    protected CommonTreeNodeStream applyInput;
     
     public TreeRewriter(TreeNodeStream input) {
         this(input, new RecognizerSharedState());
@@ -52,11 +64,13 @@ public class TreeRewriter extends TreeParser {
 
     public Object applyOnce(Object t, fptr whichRule) {
         if ( t==null ) return null;
+        BitSet rootTypes = getRootTypes(whichRule);
+        if ( rootTypes!=null && !rootTypes.member(originalAdaptor.getType(t)) ) {
+            return t; // rule can't match t; don't even start
+        }
         try {
             // share TreeParser object but not parsing-related state
-            state = new RecognizerSharedState();
-            input = new CommonTreeNodeStream(originalAdaptor, t);
-            ((CommonTreeNodeStream)input).setTokenStream(originalTokenStream);
+            prepareToApply(t);
             setBacktrackingLevel(1);
             TreeRuleReturnScope r = (TreeRuleReturnScope)whichRule.rule();
             setBacktrackingLevel(0);
@@ -73,6 +87,35 @@ public class TreeRewriter extends TreeParser {
         return t;
     }
 
+    /** Set state and input to our own state and a stream over t, made
+     *  on first call and reset after that.  A cancel(), deadline or work
+     *  budget set on the filter carries over to that state.
+     */
+    protected void prepareToApply(Object t) {
+        if ( applyState==null ) {
+            applyState = new RecognizerSharedState();
+            if ( state.ruleMemoTables!=null ) {
+                applyState.ruleMemoTables = new IntIntHashMap[state.ruleMemoTables.length];
+            }
+            applyInput = new CommonTreeNodeStream(originalAdaptor, t);
+            applyInput.setTokenStream(originalTokenStream);
+            switchState(applyState); // cancel(), deadlines and budget follow
+            input = applyInput;
+            return;
+        }
+        switchState(applyState);
+        input = applyInput;
+        applyInput.reset(t); // rewinds too
+        resetParseState(); // wipe state and memos but don't un-cancel
+    }
+
+    /** The token types whichRule can match at the root; null if any */
+    protected BitSet getRootTypes(fptr whichRule) {
+        if ( whichRule==topdown_fptr ) return topdownRootTypes;
+        if ( whichRule==bottomup_ftpr ) return bottomupRootTypes;
+        return null;
+    }
+
     public Object applyRepeatedly(Object t, fptr whichRule) {
         boolean treeChanged = true;
         while ( treeChanged ) {
@@ -87,13 +130,20 @@ public class TreeRewriter extends TreeParser {
 
     public Object downup(Object t, boolean showTransformations) {
         this.showTransformations = showTransformations;
-        TreeVisitor v = new TreeVisitor(new CommonTreeAdaptor());
-        TreeVisitorAction actions = new TreeVisitorAction() {
+        TreeVisitor v = new TreeVisitor(originalAdaptor);
+        t = v.visit(t, getDownUpActions());
+        return t;
+    }
+
+    /** The actions downup() visits with.  To rewrite subtrees in parallel
+     *  with a ParallelTreeVisitor, give it a new rewriter's actions for
+     *  each thread.
+     */
+    public TreeVisitorAction getDownUpActions() {
+        return new TreeVisitorAction() {
             public Object pre(Object t)  { return applyOnce(t, topdown_fptr); }
             public Object post(Object t) { return applyRepeatedly(t, bottomup_ftpr); }
         };
-        t = v.visit(t, actions);
-        return t;
     }
 
     /** Override this if you need transformation tracing to go somewhere
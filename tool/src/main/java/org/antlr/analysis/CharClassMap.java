@@ -0,0 +1,211 @@
+/*
+ * [The "BSD license"]
+ *  Copyright (c) 2010 Terence Parr
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without
+ *  modification, are permitted provided that the following conditions
+ *  are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *  3. The name of the author may not be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ *  IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ *  OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ *  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ *  THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.analysis;
+
+import org.antlr.codegen.CodeGenerator;
+import org.antlr.misc.Interval;
+import org.antlr.misc.IntervalSet;
+import org.antlr.misc.IntSet;
+
+import java.util.*;
+
+/** A partition of the chars into classes such that every edge of a
+ *  lexer's table-driven DFAs matches either all or none of the chars in
+ *  each class.  Tables indexed by class rather than by char stay small
+ *  when edges cover big ranges like all Unicode letters.  All the DFAs
+ *  of a lexer share one partition, emitted as a two-level table: for
+ *  each high byte, the offset of a block of 256 class numbers, with
+ *  identical blocks stored once.  Class numbers are assigned in order
+ *  of their first char, so ASCII gets the low ones.
+ */
+public class CharClassMap {
+	public static final int BLOCK_SIZE = 256;
+
+	/** Class of each char 0..Label.MAX_CHAR_VALUE */
+	protected int[] classOf = new int[Label.MAX_CHAR_VALUE+1];
+
+	protected int numberOfClasses;
+
+	/** Offset into blocks for each high byte */
+	protected List<Integer> blockOffsets = new ArrayList<Integer>();
+
+	/** The distinct blocks of 256 class numbers, end to end */
+	protected List<Integer> blocks = new ArrayList<Integer>();
+
+	/** Which generator to use to encode the tables */
+	protected CodeGenerator generator;
+
+	public CharClassMap(CodeGenerator generator, Collection<DFA> dfas) {
+		this.generator = generator;
+		// split classes on each distinct edge label once
+		Map<String, IntervalSet> labels = new LinkedHashMap<String, IntervalSet>();
+		for (DFA dfa : dfas) {
+			Collection<DFAState> states = dfa.getUserMaxLookahead()>0 ?
+				dfa.states : dfa.getUniqueStates().values();
+			for (DFAState s : states) {
+				if ( s==null ) {
+					continue;
+				}
+				for (int j = 0; j < s.getNumberOfTransitions(); j++) {
+					IntervalSet chars = getChars(s.transition(j).label);
+					if ( chars!=null ) {
+						labels.put(chars.toString(), chars);
+					}
+				}
+			}
+		}
+		int n = 1; // class 0 holds the chars no edge matches
+		for (IntervalSet chars : labels.values()) {
+			// chars of class c in this label move to class split[c]
+			Map<Integer, Integer> split = new HashMap<Integer, Integer>();
+			for (Interval I : (List<Interval>)chars.getIntervals()) {
+				for (int c = I.a; c <= I.b; c++) {
+					Integer to = split.get(classOf[c]);
+					if ( to==null ) {
+						to = n++;
+						split.put(classOf[c], to);
+					}
+					classOf[c] = to;
+				}
+			}
+		}
+		renumber();
+		createBlocks();
+	}
+
+	/** The chars matched by an edge label; null if it matches none */
+	public static IntervalSet getChars(Label label) {
+		if ( label.isAtom() ) {
+			if ( label.getAtom()>=Label.MIN_CHAR_VALUE ) {
+				return IntervalSet.of(label.getAtom());
+			}
+		}
+		else if ( label.isSet() ) {
+			IntSet set = label.getSet();
+			IntervalSet chars =
+				(IntervalSet)set.and(IntervalSet.of(Label.MIN_CHAR_VALUE,
+													Label.MAX_CHAR_VALUE));
+			if ( chars!=null && !chars.isNil() ) {
+				return chars;
+			}
+		}
+		return null;
+	}
+
+	/** Number classes 0..n-1 in order of their first char */
+	protected void renumber() {
+		Map<Integer, Integer> number = new HashMap<Integer, Integer>();
+		for (int c = 0; c < classOf.length; c++) {
+			Integer k = number.get(classOf[c]);
+			if ( k==null ) {
+				k = number.size();
+				number.put(classOf[c], k);
+			}
+			classOf[c] = k;
+		}
+		numberOfClasses = number.size();
+	}
+
+	protected void createBlocks() {
+		Map<List<Integer>, Integer> offsets = new HashMap<List<Integer>, Integer>();
+		for (int hi = 0; hi < classOf.length; hi += BLOCK_SIZE) {
+			List<Integer> block = new ArrayList<Integer>(BLOCK_SIZE);
+			for (int c = hi; c < hi+BLOCK_SIZE; c++) {
+				block.add(classOf[c]);
+			}
+			Integer offset = offsets.get(block);
+			if ( offset==null ) {
+				offset = blocks.size();
+				offsets.put(block, offset);
+				blocks.addAll(block);
+			}
+			blockOffsets.add(offset);
+		}
+	}
+
+	public int getNumberOfClasses() {
+		return numberOfClasses;
+	}
+
+	public int classOf(int c) {
+		return classOf[c];
+	}
+
+	/** The classes of the chars matched by an edge label in order; these
+	 *  are the label's columns in the state tables.
+	 */
+	public int[] getClasses(Label label) {
+		IntervalSet chars = getChars(label);
+		if ( chars==null ) {
+			return new int[0];
+		}
+		BitSet classes = new BitSet(numberOfClasses);
+		for (Interval I : (List<Interval>)chars.getIntervals()) {
+			for (int c = I.a; c <= I.b; c++) {
+				classes.set(classOf[c]);
+			}
+		}
+		int[] a = new int[classes.cardinality()];
+		int i = 0;
+		for (int k = classes.nextSetBit(0); k>=0; k = classes.nextSetBit(k+1)) {
+			a[i++] = k;
+		}
+		return a;
+	}
+
+	// JAVA-SPECIFIC Accessors; run-length encoded like the DFA tables
+
+	public List getJavaCompressedBlockOffsets() {
+		return getRunLengthEncoding(blockOffsets);
+	}
+
+	public List getJavaCompressedClasses() {
+		return getRunLengthEncoding(blocks);
+	}
+
+	/** Encode runs as count,value pairs as DFA.getRunLengthEncoding()
+	 *  does; runs are split so a count fits in a char.
+	 */
+	protected List getRunLengthEncoding(List<Integer> data) {
+		List encoded = new ArrayList();
+		int i = 0;
+		while ( i < data.size() ) {
+			int v = data.get(i);
+			int n = 1;
+			while ( i+n < data.size() && data.get(i+n)==v &&
+					n < Label.MAX_CHAR_VALUE )
+			{
+				n++;
+			}
+			encoded.add(generator.target.encodeIntAsCharEscape(n));
+			encoded.add(generator.target.encodeIntAsCharEscape(v));
+			i += n;
+		}
+		return encoded;
+	}
+}
@@ -218,6 +218,11 @@ public class DFA {
 	public Vector transitionEdgeTables; // not used by java yet
 	protected int uniqueCompressedSpecialStateNum = 0;
 
+	/** If non-null, min, max and transition are indexed by these char
+	 *  classes rather than by char.
+	 */
+	public CharClassMap charClasses;
+
 	/** Which generator to use if we're building state tables */
 	protected CodeGenerator generator = null;
 
@@ -391,6 +396,7 @@ public class DFA {
 	public void createStateTables(CodeGenerator generator) {
 		//System.out.println("createTables:\n"+this);
 		this.generator = generator;
+		charClasses = generator.getCharClasses();
 		description = getNFADecisionStartState().getDescription();
 		description =
 			generator.target.getTargetStringLiteralFromString(description);
@@ -435,6 +441,11 @@ public class DFA {
 				accept.set(s.stateNumber,
 						   Utils.integer(s.getUniquelyPredictedAlt()));
 			}
+			else if ( charClasses!=null ) {
+				createCharClassTableEntriesForState(s);
+				createSpecialTable(s);
+				createEOTAndEOFTables(s);
+			}
 			else {
 				createMinMaxTables(s);
 				createTransitionTableEntryForState(s);
@@ -586,6 +597,40 @@ public class DFA {
 		}
 	}
 
+	/** Fill in min, max and transition for s in terms of char classes:
+	 *  the row spans the lowest to highest class on any edge.
+	 */
+	protected void createCharClassTableEntriesForState(DFAState s) {
+		int[][] columns = new int[s.getNumberOfTransitions()][];
+		int smin = Integer.MAX_VALUE;
+		int smax = -1;
+		for (int j = 0; j < s.getNumberOfTransitions(); j++) {
+			columns[j] = charClasses.getClasses(s.transition(j).label);
+			if ( columns[j].length>0 ) {
+				smin = Math.min(smin, columns[j][0]);
+				smax = Math.max(smax, columns[j][columns[j].length-1]);
+			}
+		}
+		if ( smax<0 ) {
+			// must be predicates or pure EOT transition
+			smin = 0;
+			smax = 0;
+		}
+		min.set(s.stateNumber, Utils.integer(smin));
+		max.set(s.stateNumber, Utils.integer(smax));
+
+		Vector stateTransitions = new Vector(smax-smin+1);
+		stateTransitions.setSize(smax-smin+1);
+		transition.set(s.stateNumber, stateTransitions);
+		for (int j = 0; j < s.getNumberOfTransitions(); j++) {
+			Transition edge = (Transition) s.transition(j);
+			for (int k = 0; k < columns[j].length; k++) {
+				stateTransitions.set(columns[j][k]-smin,
+									 Utils.integer(edge.target.stateNumber));
+			}
+		}
+	}
+
 	/** Set up the EOT and EOF tables; we cannot put -1 min/max values so
 	 *  we need another way to test that in the DFA transition function.
 	 */
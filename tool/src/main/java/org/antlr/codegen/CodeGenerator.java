@@ -137,6 +137,11 @@ public class CodeGenerator {
 
 	protected int lineWidth = 72;
 
+	/** Partition of the chars shared by a lexer's DFA tables; null if
+	 *  the tables are indexed by char.
+	 */
+	protected CharClassMap charClasses;
+
 	/** I have factored out the generation of acyclic DFAs to separate class */
 	public ACyclicDFACodeGenerator acyclicDFAGenerator =
 		new ACyclicDFACodeGenerator(this);
@@ -311,6 +316,13 @@ public class CodeGenerator {
 		DFAOptimizer optimizer = new DFAOptimizer(grammar);
 		optimizer.optimize();
 
+		// PARTITION CHARS SO LEXER DFA TABLES ARE INDEXED BY CLASS
+		if ( grammar.type==Grammar.LEXER && grammar.isCharClasses() &&
+			 target.useCharClasses() )
+		{
+			charClasses = createCharClasses();
+		}
+
 		// OUTPUT FILE (contains recognizerST)
 		outputFileST = templates.getInstanceOf("outputFile");
 
@@ -390,6 +402,7 @@ public class CodeGenerator {
 			headerFileST.setAttribute("LEXER", Boolean.valueOf(true));
 			recognizerST.setAttribute("filterMode",
 									  Boolean.valueOf(filterMode));
+			recognizerST.setAttribute("charClasses", charClasses);
 		}
 		else if ( grammar.type==Grammar.PARSER ||
 			grammar.type==Grammar.COMBINED )
@@ -404,6 +417,12 @@ public class CodeGenerator {
 			headerFileST.setAttribute("TREE_PARSER", Boolean.valueOf(true));
             recognizerST.setAttribute("filterMode",
                                       Boolean.valueOf(filterMode));
+			if ( filterMode && target.useFilterRootTypes() ) {
+				recognizerST.setAttribute("topdownRootTypes",
+										  getFirstSetWords("topdown"));
+				recognizerST.setAttribute("bottomupRootTypes",
+										  getFirstSetWords("bottomup"));
+			}
 		}
 		outputFileST.setAttribute("recognizer", recognizerST);
 		headerFileST.setAttribute("recognizer", recognizerST);
@@ -539,6 +558,29 @@ public class CodeGenerator {
 		}
 	}
 
+	/** The token types that can start rule ruleName, as target strings
+	 *  for the words of a BitSet.  Null if the rule isn't defined here or
+	 *  can match nothing, in which case the filter tries every node.
+	 */
+	protected String[] getFirstSetWords(String ruleName) {
+		Rule r = grammar.getLocallyDefinedRule(ruleName);
+		if ( r==null || r.startState==null ) {
+			return null;
+		}
+		LookaheadSet first = grammar.FIRST(r.startState);
+		if ( first.tokenTypeSet==null || first.tokenTypeSet.isNil() ||
+			 first.tokenTypeSet.getMinElement()<Label.MIN_TOKEN_TYPE )
+		{
+			return null; // nullable (EOR) or something odd
+		}
+		long[] words = BitSet.of(first.tokenTypeSet).toPackedArray();
+		String[] wordStrings = new String[words.length];
+		for (int j = 0; j < words.length; j++) {
+			wordStrings[j] = target.getTarget64BitStringFromValue(words[j]);
+		}
+		return wordStrings;
+	}
+
 	/** Error recovery in ANTLR recognizers.
 	 *
 	 *  Based upon original ideas:
@@ -663,6 +705,28 @@ public class CodeGenerator {
 		return decisionST;
 	}
 
+	/** Partition the chars for all DFAs that will be generated as
+	 *  tables; null if every decision is inlined.
+	 */
+	protected CharClassMap createCharClasses() {
+		List<DFA> dfas = new ArrayList<DFA>();
+		for (int d = 1; d <= grammar.getNumberOfDecisions(); d++) {
+			DFA dfa = grammar.getLookaheadDFA(d);
+			if ( dfa!=null && !dfa.canInlineDecision() ) {
+				dfas.add(dfa);
+			}
+		}
+		if ( dfas.size()==0 ) {
+			return null;
+		}
+		return new CharClassMap(this, dfas);
+	}
+
+	/** The lexer's char classes or null if DFA tables are indexed by char */
+	public CharClassMap getCharClasses() {
+		return charClasses;
+	}
+
 	/** A special state is huge (too big for state tables) or has a predicated
 	 *  edge.  Generate a simple if-then-else.  Cannot be an accept state as
 	 *  they have no emanating edges.  Don't worry about switch vs if-then-else
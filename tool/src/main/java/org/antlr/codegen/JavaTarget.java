@@ -40,5 +40,13 @@ public class JavaTarget extends Target {
 	{
 		return recognizerST;
 	}
+
+	public boolean useCharClasses() {
+		return true;
+	}
+
+	public boolean useFilterRootTypes() {
+		return true;
+	}
 }
 
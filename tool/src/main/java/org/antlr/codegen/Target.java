@@ -342,6 +342,20 @@ public class Target {
 		return "\\u"+hex;
 	}
 
+	/** Can this target's runtime walk lexer DFA tables indexed by char
+	 *  class?  See CharClassMap.
+	 */
+	public boolean useCharClasses() {
+		return false;
+	}
+
+	/** Can this target's TreeFilter and TreeRewriter skip nodes whose
+	 *  type can't start topdown or bottomup?
+	 */
+	public boolean useFilterRootTypes() {
+		return false;
+	}
+
 	/** Some targets only support ASCII or 8-bit chars/strings.  For example,
 	 *  C++ will probably want to return 0xFF here.
 	 */
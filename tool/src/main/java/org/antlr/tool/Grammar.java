@@ -206,6 +206,9 @@ public class Grammar {
 				add("k");
 				add("backtrack");
 				add("memoize");
+				add("flatDFA");
+				add("memoizeSynpreds");
+				add("charClasses");
 				}
 			};
 
@@ -219,6 +222,9 @@ public class Grammar {
 				add("k");
 				add("backtrack");
 				add("memoize");
+				add("flatDFA");
+				add("memoizeSynpreds");
+				add("charClasses");
 				}
 			};
 
@@ -233,6 +239,8 @@ public class Grammar {
                 add("backtrack");
                 add("memoize");
                 add("filter");
+                add("flatDFA");
+                add("memoizeSynpreds");
             }
         };
 
@@ -475,6 +483,11 @@ public class Grammar {
 	 */
 	public Set<String> synPredNamesUsedInDFA = new HashSet();
 
+	/** Synpreds whose results generated code caches; computed once analysis
+	 *  is done.  See getSynpredRuleIndexes().
+	 */
+	protected Map<String,Integer> synpredRuleIndexes;
+
 	/** Track decisions with syn preds specified for reporting.
 	 *  This is the a set of BLOCK type AST nodes.
 	 */
@@ -2551,6 +2564,104 @@ outer:
 		return false;
 	}
 
+	/** Should cyclic DFA simulate with FlatDFA rather than DFA? */
+	public boolean isFlatDFA() {
+		Object flatDFA = getOption("flatDFA");
+		if ( flatDFA!=null ) {
+			return flatDFA.toString().equals("true");
+		}
+		return false;
+	}
+
+	/** Should lexer DFA tables be indexed by char class rather than by
+	 *  char?  On unless charClasses=false or flatDFA=true; FlatDFA packs
+	 *  its tables by char.
+	 */
+	public boolean isCharClasses() {
+		if ( isFlatDFA() ) {
+			return false;
+		}
+		Object charClasses = getOption("charClasses");
+		if ( charClasses!=null ) {
+			return !charClasses.toString().equals("false");
+		}
+		return true;
+	}
+
+	/** Should synpreds cache their result at each input index?  Yes,
+	 *  whether or not memoize=true, unless memoizeSynpreds=false.  Not
+	 *  every synpred is cached even then; see getSynpredRuleIndexes().
+	 */
+	public boolean isMemoizeSynpreds() {
+		Object memoizeSynpreds = getOption("memoizeSynpreds");
+		return memoizeSynpreds==null || !memoizeSynpreds.toString().equals("false");
+	}
+
+	/** Map each synpred whose result can be cached to its rule index,
+	 *  which is unique across a composite grammar; the synpred template
+	 *  keys its memo with it.  A synpred is left out if its fragment, or
+	 *  any rule it invokes, holds a semantic predicate, a {{...}} action
+	 *  or an @init action.  A predicate may test state such as a symbol
+	 *  table, so the same input index can give a different answer later,
+	 *  and the actions run while backtracking, so a cache hit would skip
+	 *  them.
+	 */
+	public Map<String,Integer> getSynpredRuleIndexes() {
+		if ( synpredRuleIndexes!=null ) {
+			return synpredRuleIndexes;
+		}
+		synpredRuleIndexes = new HashMap<String,Integer>();
+		if ( !isMemoizeSynpreds() ) {
+			return synpredRuleIndexes;
+		}
+		for (String name : synPredNamesUsedInDFA) {
+			if ( !reachesBacktrackingCode(getRule(name), new HashSet<Rule>()) ) {
+				synpredRuleIndexes.put(name, Utils.integer(getRuleIndex(name)));
+			}
+		}
+		return synpredRuleIndexes;
+	}
+
+	protected boolean reachesBacktrackingCode(Rule r, Set<Rule> visited) {
+		if ( r==null || r.tree==null || !visited.add(r) ) {
+			return false;
+		}
+		if ( r.getActions().get("init")!=null ) {
+			return true;
+		}
+		return reachesBacktrackingCode(r.tree, visited);
+	}
+
+	/** Does t hold a semantic predicate or {{...}} action, or invoke a
+	 *  rule or synpred that gets to one or has an @init action?  Rule
+	 *  refs are TOKEN_REFs in lexers.
+	 */
+	protected boolean reachesBacktrackingCode(GrammarAST t, Set<Rule> visited) {
+		int ttype = t.getType();
+		if ( ttype==ANTLRParser.SEMPRED || ttype==ANTLRParser.GATED_SEMPRED ||
+			 ttype==ANTLRParser.FORCED_ACTION )
+		{
+			return true;
+		}
+		if ( ttype==ANTLRParser.RULE_REF ||
+			 ttype==ANTLRParser.SYN_SEMPRED ||
+			 ttype==ANTLRParser.BACKTRACK_SEMPRED ||
+			 (ttype==ANTLRParser.TOKEN_REF && type==LEXER) )
+		{
+			if ( reachesBacktrackingCode(getRule(t.getText()), visited) ) {
+				return true;
+			}
+		}
+		GrammarAST child = (GrammarAST)t.getFirstChild();
+		while ( child!=null ) {
+			if ( reachesBacktrackingCode(child, visited) ) {
+				return true;
+			}
+			child = (GrammarAST)child.getNextSibling();
+		}
+		return false;
+	}
+
 	public boolean isBuiltFromString() {
 		return builtFromString;
 	}
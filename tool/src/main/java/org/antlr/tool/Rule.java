@@ -508,6 +508,50 @@ public class Rule {
 		return null;
 	}
 
+	public boolean getIsTokensRule() {
+		return name.equals(Grammar.ARTIFICIAL_TOKENS_RULENAME);
+	}
+
+	/** If this is a lexer rule that matches a single literal and does
+	 *  nothing else, return that literal as a target string; else null.
+	 *  When the Tokens DFA has already scanned past such a literal,
+	 *  mTokens() can consume it without calling the rule.
+	 */
+	public String getSingleLiteral() {
+		if ( grammar.type!=Grammar.LEXER || isSynPred ||
+			 argActionAST!=null || returnScope!=null || ruleScope!=null ||
+			 useScopes!=null || actions.size()>0 || inlineActions.size()>0 ||
+			 tree==null ||
+			 tree.findFirstType(ANTLRParser.ACTION)!=null ||
+			 tree.findFirstType(ANTLRParser.SEMPRED)!=null ||
+			 tree.findFirstType(ANTLRParser.GATED_SEMPRED)!=null ||
+			 tree.findFirstType(ANTLRParser.SYN_SEMPRED)!=null )
+		{
+			return null;
+		}
+		GrammarAST block = tree.getFirstChildWithType(ANTLRParser.BLOCK);
+		if ( block==null || block.getNumberOfChildrenWithType(ANTLRParser.ALT)!=1 ) {
+			return null;
+		}
+		GrammarAST alt = block.getFirstChildWithType(ANTLRParser.ALT);
+		if ( alt.getNumberOfChildren()!=2 ) { // literal, EOA
+			return null;
+		}
+		GrammarAST lit = (GrammarAST)alt.getFirstChild();
+		if ( (lit.getType()!=ANTLRParser.STRING_LITERAL &&
+			  lit.getType()!=ANTLRParser.CHAR_LITERAL) ||
+			 lit.getNumberOfChildren()!=0 )
+		{
+			return null;
+		}
+		CodeGenerator generator = grammar.getCodeGenerator();
+		if ( generator==null ) {
+			return null;
+		}
+		return generator.target.getTargetStringLiteralFromANTLRStringLiteral(generator,
+																			 lit.getText());
+	}
+
 	/** Given @scope::name {action} define it for this grammar.  Later,
 	 *  the code generator will ask for the actions table.
 	 */
@@ -543,7 +543,7 @@ public abstract class BaseTest {
 	protected void writeFile(String dir, String fileName, String content) {
 		try {
 			File f = new File(dir, fileName);
-			FileWriter w = new FileWriter(f);
+			Writer w = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
 			BufferedWriter bw = new BufferedWriter(w);
 			bw.write(content);
 			bw.close();
@@ -575,7 +575,7 @@ public abstract class BaseTest {
 			"}\n"+
 			"public class Test {\n" +
 			"    public static void main(String[] args) throws Exception {\n" +
-			"        CharStream input = new ANTLRFileStream(args[0]);\n" +
+			"        CharStream input = new ANTLRFileStream(args[0], \"UTF-8\");\n" +
 			"        $lexerName$ lex = new $lexerName$(input);\n" +
 			"        CommonTokenStream tokens = new CommonTokenStream(lex);\n" +
 			"        $createParser$\n"+
@@ -611,7 +611,7 @@ public abstract class BaseTest {
 			"}\n"+
 			"public class Test {\n" +
 			"    public static void main(String[] args) throws Exception {\n" +
-			"        CharStream input = new ANTLRFileStream(args[0]);\n" +
+			"        CharStream input = new ANTLRFileStream(args[0], \"UTF-8\");\n" +
 			"        $lexerName$ lex = new $lexerName$(input);\n" +
 			"        CommonTokenStream tokens = new CommonTokenStream(lex);\n" +
 			"        System.out.println(tokens);\n" +
@@ -639,7 +639,7 @@ public abstract class BaseTest {
 			"}\n"+
 			"public class Test {\n" +
 			"    public static void main(String[] args) throws Exception {\n" +
-			"        CharStream input = new ANTLRFileStream(args[0]);\n" +
+			"        CharStream input = new ANTLRFileStream(args[0], \"UTF-8\");\n" +
 			"        $lexerName$ lex = new $lexerName$(input);\n" +
 			"        TokenRewriteStream tokens = new TokenRewriteStream(lex);\n" +
 			"        $createParser$\n"+
@@ -695,7 +695,7 @@ public abstract class BaseTest {
 			"}\n"+
 			"public class Test {\n" +
 			"    public static void main(String[] args) throws Exception {\n" +
-			"        CharStream input = new ANTLRFileStream(args[0]);\n" +
+			"        CharStream input = new ANTLRFileStream(args[0], \"UTF-8\");\n" +
 			"        $lexerName$ lex = new $lexerName$(input);\n" +
 			"        TokenRewriteStream tokens = new TokenRewriteStream(lex);\n" +
 			"        $createParser$\n"+
@@ -752,7 +752,7 @@ public abstract class BaseTest {
 			"    		new StringTemplateGroup(new StringReader(templates)," +
 			"					AngleBracketTemplateLexer.class);"+
 			"    public static void main(String[] args) throws Exception {\n" +
-			"        CharStream input = new ANTLRFileStream(args[0]);\n" +
+			"        CharStream input = new ANTLRFileStream(args[0], \"UTF-8\");\n" +
 			"        $lexerName$ lex = new $lexerName$(input);\n" +
 			"        CommonTokenStream tokens = new CommonTokenStream(lex);\n" +
 			"        $createParser$\n"+
@@ -0,0 +1,153 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.antlr.runtime.*;
+import org.antlr.runtime.tree.*;
+import org.junit.Test;
+
+public class TestArenaTreeAdaptor extends BaseTest {
+	protected void writeTreeTestFile(String parserName,
+									 String treeParserName,
+									 String lexerName,
+									 String parserStartRuleName,
+									 String treeParserStartRuleName,
+									 boolean debug)
+	{
+		writeFile(tmpdir, "Test.java",
+				  TestCompactTree.adaptorTestFile("ArenaTreeAdaptor", parserName,
+												  treeParserName, lexerName,
+												  parserStartRuleName,
+												  treeParserStartRuleName));
+	}
+
+	@Test public void testGeneratedParserBuildsArenaTrees() throws Exception {
+		String found = execTreeParser("T.g", TestCompactTree.AST_GRAMMAR,
+									  "TParser", "TP.g",
+									  TestCompactTree.TREE_GRAMMAR, "TP",
+									  "TLexer", "s", "s", "x + y; a - b");
+		assertEquals("(PLUS x y) (- a b)\n" +
+					 "add x + y\n" +
+					 "sub a - b\n", found);
+	}
+
+	@Test public void testNodesAreBoxedOnce() throws Exception {
+		TokenStream tokens = TestCommonTokenStream.words("a b");
+		ArenaTreeAdaptor adaptor = new ArenaTreeAdaptor(tokens, 16);
+		Object r = adaptor.create(tokens.get(0));
+		for (int i = 0; i < 300; i++) { // well past Integer's cache
+			adaptor.addChild(r, adaptor.create(tokens.get(2)));
+		}
+		Object last = adaptor.getChild(r, 299);
+		assertTrue(last==adaptor.getChild(r, 299));
+		assertTrue(r==adaptor.getParent(last));
+	}
+
+	@Test public void testBuildTreeAsParserWould() throws Exception {
+		TokenStream tokens = TestCommonTokenStream.words("a b c");
+		ArenaTreeAdaptor adaptor = new ArenaTreeAdaptor(tokens);
+		// r : a b^ c ;
+		Object root_0 = adaptor.nil();
+		adaptor.addChild(root_0, adaptor.create(tokens.get(0)));
+		root_0 = adaptor.becomeRoot(adaptor.create(tokens.get(2)), root_0);
+		adaptor.addChild(root_0, adaptor.create(tokens.get(4)));
+		Object t = adaptor.rulePostProcessing(root_0);
+		assertEquals("(b a c)", adaptor.toStringTree(t));
+		assertTrue(t instanceof Integer);
+		assertEquals(2, adaptor.getTokenStartIndex(t));
+		Object c = adaptor.getChild(t, 1);
+		assertEquals(t, adaptor.getParent(c));
+		assertEquals(1, adaptor.getChildIndex(c));
+		assertEquals("c", adaptor.getText(c));
+		assertTrue(tokens.get(4)==adaptor.getToken(c));
+	}
+
+	@Test public void testNilRootsAreRecycled() throws Exception {
+		TokenStream tokens = TestCommonTokenStream.words("a b");
+		ArenaTreeAdaptor adaptor = new ArenaTreeAdaptor(tokens);
+		Object list = adaptor.nil();
+		adaptor.addChild(list, adaptor.create(tokens.get(0)));
+		Object a = adaptor.rulePostProcessing(list);
+		assertEquals("a", adaptor.toStringTree(a));
+		assertNull(adaptor.getParent(a));
+		int n = adaptor.size();
+		assertNull(adaptor.rulePostProcessing(adaptor.nil()));
+		assertEquals(n, adaptor.size());
+	}
+
+	@Test public void testRewrites() throws Exception {
+		TokenStream tokens = TestCommonTokenStream.words("a b c d");
+		ArenaTreeAdaptor adaptor = new ArenaTreeAdaptor(tokens);
+		Object r = adaptor.create(tokens.get(0));
+		Object list = adaptor.nil();
+		for (int i = 2; i <= 6; i += 2) {
+			adaptor.addChild(list, adaptor.create(tokens.get(i)));
+		}
+		adaptor.addChild(r, list);
+		assertEquals("(a b c d)", adaptor.toStringTree(r));
+		assertEquals(0, adaptor.getChildCount(list));
+
+		Object x = adaptor.create(7, "x");
+		adaptor.replaceChildren(r, 0, 1, x);
+		assertEquals("(a x d)", adaptor.toStringTree(r));
+		assertEquals(1, adaptor.getChildIndex(adaptor.getChild(r, 1)));
+		Object d = adaptor.getChild(r, 1);
+		adaptor.setChild(r, 0, adaptor.create(8, "y"));
+		assertEquals("(a y d)", adaptor.toStringTree(r));
+		Object dup = adaptor.dupTree(r);
+		adaptor.deleteChild(r, 0);
+		assertEquals("(a d)", adaptor.toStringTree(r));
+		assertEquals(0, adaptor.getChildIndex(d));
+		assertEquals("(a y d)", adaptor.toStringTree(dup));
+
+		// moving a node takes it out of its old parent
+		Object z = adaptor.create(9, "z");
+		adaptor.addChild(z, d);
+		assertEquals("a", adaptor.toStringTree(r));
+		assertEquals("(z d)", adaptor.toStringTree(z));
+	}
+
+	@Test public void testWideTreeNodeStream() throws Exception {
+		TokenStream tokens = TestCommonTokenStream.words("a b");
+		ArenaTreeAdaptor adaptor = new ArenaTreeAdaptor(tokens, 16);
+		Object r = adaptor.create(tokens.get(0));
+		for (int i = 0; i < 10000; i++) {
+			Object b = adaptor.create(tokens.get(2));
+			adaptor.addChild(b, adaptor.create(5, "s"));
+			adaptor.addChild(r, b);
+		}
+		CommonTreeNodeStream nodes = new CommonTreeNodeStream(adaptor, r);
+		int n = 0;
+		while ( nodes.LA(1)!=Token.EOF ) {
+			if ( n<7 ) assertEquals(new int[] {6,2,6,2,5,3,6}[n], nodes.LA(1));
+			nodes.consume();
+			n++;
+		}
+		assertEquals(3+10000*4, n);
+	}
+}
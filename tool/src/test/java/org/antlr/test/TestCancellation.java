@@ -0,0 +1,124 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.ParseCancelledException;
+import org.antlr.runtime.Parser;
+import org.antlr.runtime.TokenStream;
+import org.junit.Test;
+
+public class TestCancellation extends BaseTest {
+    /** Loops forever, polling like a generated (..)* loop does */
+    public static class SpinningParser extends Parser {
+        public SpinningParser(TokenStream input) {
+            super(input);
+        }
+
+        public boolean isCancelled() {
+            return state.cancelled;
+        }
+
+        public void spin() {
+            do {
+                if ( state.cancelled ) throwCancelled(input);
+            } while (true);
+        }
+    }
+
+    protected SpinningParser newParser() {
+        TestCommonTokenStream.WordLexer lexer = new TestCommonTokenStream.WordLexer();
+        lexer.setCharStream(new ANTLRStringStream("ab cd"));
+        return new SpinningParser(new CommonTokenStream(lexer));
+    }
+
+    @Test(timeout=10000) public void testDeadline() throws Exception {
+        SpinningParser parser = newParser();
+        parser.setDeadline(20);
+        boolean thrown = false;
+        try {
+            parser.spin();
+        }
+        catch (ParseCancelledException pce) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    @Test(timeout=10000) public void testCancelFromOtherThread() throws Exception {
+        final SpinningParser parser = newParser();
+        new Thread() {
+            public void run() {
+                parser.cancel();
+            }
+        }.start();
+        boolean thrown = false;
+        try {
+            parser.spin();
+        }
+        catch (ParseCancelledException pce) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    @Test(timeout=10000) public void testResetClearsDeadline() throws Exception {
+        SpinningParser parser = newParser();
+        parser.setDeadline(20);
+        parser.reset();
+        Thread.sleep(200);
+        assertFalse(parser.isCancelled()); // the old deadline never fired
+    }
+
+    @Test public void testGeneratedRulesPollOnEntry() throws Exception {
+        String grammar =
+            "grammar T;\n" +
+            "s : a b ;\n" +
+            "  catch [ParseCancelledException pce] {System.out.println(\"cancelled\");}\n" +
+            "a : ID {System.out.println(\"a\"); cancel();} ;\n" +
+            "b : ID {System.out.println(\"b\");} ;\n" +
+            "ID : 'a'..'z'+ ;\n" +
+            "WS : (' '|'\\n')+ {$channel=HIDDEN;} ;\n";
+        String found = execParser("T.g", grammar, "TParser", "TLexer",
+                                  "s", "x y", false);
+        assertEquals("a\ncancelled\n", found);
+    }
+
+    @Test public void testGeneratedLoopsPollEachIteration() throws Exception {
+        String grammar =
+            "grammar T;\n" +
+            "s : ( ID {System.out.println($ID.text); if ($ID.text.equals(\"b\")) cancel();} )+ ;\n" +
+            "  catch [ParseCancelledException pce] {System.out.println(\"cancelled\");}\n" +
+            "ID : 'a'..'z'+ ;\n" +
+            "WS : (' '|'\\n')+ {$channel=HIDDEN;} ;\n";
+        String found = execParser("T.g", grammar, "TParser", "TLexer",
+                                  "s", "a b c d", false);
+        assertEquals("a\nb\ncancelled\n", found);
+    }
+}
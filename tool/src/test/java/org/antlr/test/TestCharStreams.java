@@ -0,0 +1,237 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.antlr.runtime.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+/** Check the alternative char streams against ANTLRStringStream */
+public class TestCharStreams extends BaseTest {
+	protected String makeInput(int lines) {
+		StringBuffer buf = new StringBuffer();
+		for (int i = 1; i <= lines; i++) {
+			buf.append("line "+i+" x=y+z;\n");
+		}
+		return buf.toString();
+	}
+
+	/** Walk both streams in lockstep, bouncing back with mark/rewind now
+	 *  and then; return null if they agree else a description of where
+	 *  they part ways.
+	 */
+	protected String compareStreams(CharStream expected, CharStream found) {
+		int i = 0;
+		while ( expected.LA(1)!=CharStream.EOF ) {
+			if ( expected.LA(1)!=found.LA(1) ||
+				 expected.LA(-1)!=found.LA(-1) ||
+				 expected.index()!=found.index() ||
+				 expected.getLine()!=found.getLine() ||
+				 expected.getCharPositionInLine()!=found.getCharPositionInLine() )
+			{
+				return "streams differ at char "+i;
+			}
+			if ( i%1000==7 ) {
+				int m1 = expected.mark();
+				int m2 = found.mark();
+				for (int j = 0; j < 300; j++) {
+					expected.consume();
+					found.consume();
+				}
+				expected.rewind(m1);
+				found.rewind(m2);
+			}
+			expected.consume();
+			found.consume();
+			i++;
+		}
+		if ( found.LA(1)!=CharStream.EOF ) return "found has extra chars at "+i;
+		return null;
+	}
+
+	@Test public void testMappedFileStream() throws Exception {
+		String input = makeInput(20000); // several pages worth
+		mkdir(tmpdir);
+		writeFile(tmpdir, "input", input);
+		String fileName = new File(tmpdir, "input").getAbsolutePath();
+		ANTLRMappedFileStream found = new ANTLRMappedFileStream(fileName);
+		assertEquals(null, compareStreams(new ANTLRStringStream(input), found));
+		assertEquals(input.length(), found.size());
+		assertEquals(input.substring(60000, 140001), found.substring(60000, 140000));
+		found.seek(0);
+		assertEquals('l', found.LA(1));
+		found.close();
+	}
+
+	@Test public void testMappedFileStreamSizeWhileLexing() throws Exception {
+		String input = makeInput(20000);
+		mkdir(tmpdir);
+		writeFile(tmpdir, "input", input);
+		String fileName = new File(tmpdir, "input").getAbsolutePath();
+		ANTLRMappedFileStream found = new ANTLRMappedFileStream(fileName);
+		ANTLRStringStream expected = new ANTLRStringStream(input);
+		for (int i = 0; i < 10; i++) {
+			expected.consume();
+			found.consume();
+		}
+		// decodes every page through the cache, evicting the current one
+		assertEquals(input.length(), found.size());
+		assertEquals(null, compareStreams(expected, found));
+		found.close();
+		assertTrue(new File(fileName).delete());
+	}
+
+	@Test public void testMappedFileStreamEmpty() throws Exception {
+		mkdir(tmpdir);
+		writeFile(tmpdir, "input", "");
+		String fileName = new File(tmpdir, "input").getAbsolutePath();
+		ANTLRMappedFileStream found = new ANTLRMappedFileStream(fileName);
+		assertEquals(CharStream.EOF, found.LA(1));
+		assertEquals(0, found.size());
+		found.close();
+	}
+
+	/** Lets us see whether the whole file has been decoded */
+	public static class SizeCheckingMappedStream extends ANTLRMappedFileStream {
+		public SizeCheckingMappedStream(String fileName) throws IOException {
+			super(fileName);
+		}
+		public boolean isSizeKnown() { return sizeKnown; }
+	}
+
+	@Test public void testMappedFileStreamTokenTextDecodesOnlyItsPage() throws Exception {
+		String input = makeInput(20000);
+		mkdir(tmpdir);
+		writeFile(tmpdir, "input", input);
+		String fileName = new File(tmpdir, "input").getAbsolutePath();
+		SizeCheckingMappedStream found = new SizeCheckingMappedStream(fileName);
+		CommonToken t = new CommonToken(found, 4, Token.DEFAULT_CHANNEL, 5, 10);
+		assertEquals("1 x=y+", t.getTextSequence().toString());
+		assertFalse(found.isSizeKnown());
+		CommonToken eof = new CommonToken(found, Token.EOF, Token.DEFAULT_CHANNEL,
+										  input.length(), input.length());
+		assertEquals("<EOF>", eof.getTextSequence().toString());
+		found.close();
+	}
+
+	@Test public void testUnbufferedCharStream() throws Exception {
+		String input = makeInput(2000);
+		UnbufferedCharStream found = new UnbufferedCharStream(new StringReader(input), 16);
+		assertEquals(null, compareStreams(new ANTLRStringStream(input), found));
+		assertEquals(input.length(), found.size());
+	}
+
+	@Test public void testUnbufferedCharStreamDropsReleasedChars() throws Exception {
+		String input = makeInput(2000);
+		UnbufferedCharStream found = new UnbufferedCharStream(new StringReader(input), 16);
+		int m = found.mark();
+		for (int i = 0; i < 100; i++) found.consume();
+		assertEquals(input.substring(0, 100), found.substring(0, 99)); // still marked
+		found.release(m);
+		for (int i = 0; i < 100; i++) found.consume();
+		String msg = null;
+		try { found.substring(0, 99); }
+		catch (UnsupportedOperationException uoe) {
+			msg = uoe.getMessage();
+		}
+		assertTrue(msg!=null);
+		assertEquals(input.charAt(199), found.LA(-1));
+	}
+
+	@Test public void testUTF8StreamASCII() throws Exception {
+		String input = makeInput(2000);
+		ANTLRUTF8Stream found = new ANTLRUTF8Stream(input.getBytes("US-ASCII"));
+		assertEquals(null, compareStreams(new ANTLRStringStream(input), found));
+		assertEquals(input.length(), found.size());
+		assertEquals(input.substring(100, 201), found.substring(100, 200));
+	}
+
+	@Test public void testUTF8StreamMultiByte() throws Exception {
+		String input = "a\u00e9\u20ac\n\u4e2d=b";
+		ANTLRUTF8Stream found = new ANTLRUTF8Stream(input.getBytes("UTF-8"));
+		assertEquals('a', found.LA(1));
+		assertEquals(0x20ac, found.LA(3));
+		found.consume();
+		found.consume();
+		assertEquals(0xe9, found.LA(-1));
+		assertEquals(3, found.index()); // byte, not char, offset
+		assertEquals(2, found.getCharPositionInLine());
+		found.consume();
+		found.consume();
+		assertEquals(2, found.getLine());
+		int start = found.index();
+		found.consume();
+		assertEquals('=', found.LA(1));
+		assertEquals("\u4e2d", found.substring(start, found.index()-1));
+		assertEquals(1, found.getCharPositionInLine());
+	}
+
+	@Test public void testUTF8StreamSupplementary() throws Exception {
+		String input = "a\ud83d\ude00b\n\ud800\udc00"; // U+1F600, U+10000
+		ANTLRUTF8Stream found = new ANTLRUTF8Stream(input.getBytes("UTF-8"));
+		StringBuffer chars = new StringBuffer();
+		while ( found.LA(1)!=CharStream.EOF ) {
+			chars.append((char)found.LA(1));
+			found.consume();
+		}
+		assertEquals(input, chars.toString());
+		assertEquals(0xdc00, found.LA(-1));
+		assertEquals(0xd800, found.LA(-2));
+		assertEquals('\n', found.LA(-3));
+		found = new ANTLRUTF8Stream(input.getBytes("UTF-8"));
+		found.consume(); // now at the high half of the emoji
+		assertEquals(0xd83d, found.LA(1));
+		assertEquals(0xde00, found.LA(2));
+		assertEquals('b', found.LA(3));
+		found.consume();
+		found.consume();
+		assertEquals(5, found.index()); // after 1+4 bytes
+		assertEquals(3, found.getCharPositionInLine()); // a pair is 2 chars
+		assertEquals(0xde00, found.LA(-1));
+		assertEquals("\ud83d\ude00", found.substring(1, 4));
+	}
+
+	@Test public void testUTF8StreamRejectsBadForms() throws Exception {
+		byte[] input = {
+			(byte)0xC0, (byte)0xAF,             // overlong '/'
+			(byte)0xE0, (byte)0x80, (byte)0xAF, // overlong '/'
+			(byte)0xED, (byte)0xA0, (byte)0x80, // encoded surrogate D800
+			(byte)0xF4, (byte)0x90, (byte)0x80, (byte)0x80, // past U+10FFFF
+			'x'
+		};
+		ANTLRUTF8Stream found = new ANTLRUTF8Stream(input);
+		for (int i = 0; i < input.length-1; i++) {
+			assertEquals(ANTLRUTF8Stream.REPLACEMENT_CHAR, found.LA(1));
+			found.consume();
+		}
+		assertEquals('x', found.LA(1));
+	}
+}
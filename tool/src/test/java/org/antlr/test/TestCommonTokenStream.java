@@ -29,10 +29,17 @@
 package org.antlr.test;
 
 import org.antlr.runtime.*;
+import org.antlr.runtime.misc.IntIntHashMap;
 import org.antlr.tool.Grammar;
 import org.antlr.tool.Interpreter;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
 /** This actually tests new (12/4/09) buffered but on-demand fetching stream */
 public class TestCommonTokenStream extends BaseTest {
     @Test public void testFirstToken() throws Exception {
@@ -220,4 +227,361 @@ public class TestCommonTokenStream extends BaseTest {
         assertEquals("=", tokens.LT(-3).getText());
         assertEquals("x", tokens.LT(-4).getText());
     }
-}
\ No newline at end of file
+
+    @Test public void testNumberOfOnChannelTokens() throws Exception {
+        WordLexer lexer = new WordLexer();
+        lexer.setCharStream(new ANTLRStringStream("a b c"));
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        assertEquals(4, tokens.getNumberOfOnChannelTokens()); // a b c EOF
+        lexer = new WordLexer();
+        lexer.setCharStream(new ANTLRStringStream("a b c"));
+        tokens = new CommonTokenStream(lexer, Token.HIDDEN_CHANNEL);
+        assertEquals(2, tokens.getNumberOfOnChannelTokens()); // EOF isn't hidden
+    }
+
+    @Test public void testOffChannelSeek() throws Exception {
+        TokenSource lexer = // simulate input " x =34  ;\n"
+            new TokenSource() {
+                int i = 0;
+                Token[] tokens = {
+                    new CommonToken(1," "),
+                    new CommonToken(1,"x"),
+                    new CommonToken(1," "),
+                    new CommonToken(1,"="),
+                    new CommonToken(1,"34"),
+                    new CommonToken(1," "),
+                    new CommonToken(1," "),
+                    new CommonToken(1,";"),
+                    new CommonToken(1,"\n"),
+                    new CommonToken(Token.EOF,"")
+                };
+                {
+                    tokens[0].setChannel(Lexer.HIDDEN);
+                    tokens[2].setChannel(Lexer.HIDDEN);
+                    tokens[5].setChannel(Lexer.HIDDEN);
+                    tokens[6].setChannel(Lexer.HIDDEN);
+                    tokens[8].setChannel(Lexer.HIDDEN);
+                }
+                public Token nextToken() {
+                    return tokens[i++];
+                }
+                public String getSourceName() { return "test"; }
+            };
+
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        assertEquals("x", tokens.LT(1).getText());
+        assertEquals("34", tokens.LT(3).getText());
+        tokens.seek(5); // off-channel token is LT(1) but not LT(2)
+        assertEquals(" ", tokens.LT(1).getText());
+        assertEquals(";", tokens.LT(2).getText());
+        assertEquals("34", tokens.LT(-1).getText());
+        tokens.consume();
+        assertEquals(";", tokens.LT(1).getText());
+        assertEquals("34", tokens.LT(-1).getText());
+        tokens.seek(3);
+        assertEquals("=", tokens.LT(1).getText());
+        assertEquals("x", tokens.LT(-1).getText());
+        assertEquals(5, tokens.getNumberOfOnChannelTokens());
+    }
+
+    @Test public void testSeekAfterReset() throws Exception {
+        WordLexer lexer = new WordLexer();
+        lexer.setCharStream(new ANTLRStringStream("a b c d"));
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        tokens.consume();
+        tokens.consume();
+        tokens.mark(); // at c
+        tokens.reset();
+        tokens.consume();
+        tokens.seek(0); // lastMarker is 0 again but c's position is stale
+        assertEquals("a", tokens.LT(1).getText());
+        assertEquals("b", tokens.LT(2).getText());
+        tokens.consume();
+        assertEquals("b", tokens.LT(1).getText());
+    }
+
+    @Test public void testBoundedStreamDiscardsTokens() throws Exception {
+        TokenSource lexer = // simulate input "a0 a1 a2 ..." that never ends
+            new TokenSource() {
+                int i = 0;
+                public Token nextToken() {
+                    Token t;
+                    if ( i%2==0 ) {
+                        t = new CommonToken(4,"a"+(i/2));
+                    }
+                    else {
+                        t = new CommonToken(5," ");
+                        t.setChannel(Lexer.HIDDEN);
+                    }
+                    i++;
+                    return t;
+                }
+                public String getSourceName() { return "test"; }
+            };
+
+        BoundedTokenStream tokens = new BoundedTokenStream(lexer, Token.DEFAULT_CHANNEL, 2);
+        for (int i=1; i<=1000; i++) tokens.consume();
+        assertEquals("a1000", tokens.LT(1).getText());
+        assertEquals("a998", tokens.LT(-2).getText());
+
+        int m = tokens.mark();
+        for (int i=1; i<=500; i++) tokens.consume();
+        assertEquals("a1000 a1001", tokens.toString(m, m+2)); // marked so still there
+        tokens.rewind(m);
+        assertEquals("a1000", tokens.LT(1).getText());
+        assertEquals("a999", tokens.LT(-1).getText());
+
+        for (int i=1; i<=1000; i++) tokens.consume();
+        String msg = null;
+        try { tokens.get(m); }
+        catch (NoSuchElementException nsee) {
+            msg = nsee.getMessage();
+        }
+        assertNotNull(msg);
+    }
+
+    @Test public void testCompactStreamOffChannel() throws Exception {
+        TokenSource lexer = // simulate input " x =34  ;\n"
+            new TokenSource() {
+                int i = 0;
+                Token[] tokens = {
+                    new CommonToken(1," "),
+                    new CommonToken(1,"x"),
+                    new CommonToken(1," "),
+                    new CommonToken(1,"="),
+                    new CommonToken(1,"34"),
+                    new CommonToken(1," "),
+                    new CommonToken(1," "),
+                    new CommonToken(1,";"),
+                    new CommonToken(1,"\n"),
+                    new CommonToken(Token.EOF,"")
+                };
+                {
+                    tokens[0].setChannel(Lexer.HIDDEN);
+                    tokens[2].setChannel(Lexer.HIDDEN);
+                    tokens[5].setChannel(Lexer.HIDDEN);
+                    tokens[6].setChannel(Lexer.HIDDEN);
+                    tokens[8].setChannel(Lexer.HIDDEN);
+                }
+                public Token nextToken() {
+                    return tokens[i++];
+                }
+                public String getSourceName() { return "test"; }
+            };
+
+        CompactTokenStream tokens = new CompactTokenStream(lexer);
+
+        assertEquals("x", tokens.LT(1).getText()); // must skip first off channel token
+        assertTrue(tokens.LT(1)==tokens.LT(1)); // views are reused
+        tokens.consume();
+        assertEquals("=", tokens.LT(1).getText());
+        assertEquals("x", tokens.LT(-1).getText());
+
+        tokens.consume();
+        assertEquals("34", tokens.LT(1).getText());
+        assertEquals(";", tokens.LT(2).getText());
+        assertEquals("=", tokens.LT(-1).getText());
+
+        tokens.consume();
+        tokens.consume();
+        assertEquals(Token.EOF, tokens.LA(1));
+        assertEquals(";", tokens.LT(-1).getText());
+        assertEquals(4, tokens.LT(-2).getTokenIndex());
+        assertEquals("x =34  ;\n", tokens.toString(1, 8));
+    }
+
+    /** words, double-quoted strings and hidden whitespace */
+    public static class WordLexer extends Lexer {
+        public void mTokens() throws RecognitionException {
+            int c = input.LA(1);
+            if ( c==' ' || c=='\n' ) {
+                while ( input.LA(1)==' ' || input.LA(1)=='\n' ) input.consume();
+                state.type = 4;
+                state.channel = HIDDEN;
+            }
+            else if ( c=='"' ) {
+                input.consume();
+                while ( input.LA(1)!='"' && input.LA(1)!=CharStream.EOF ) input.consume();
+                input.consume();
+                state.type = 5;
+            }
+            else {
+                while ( Character.isLetter(input.LA(1)) ) input.consume();
+                if ( input.index()==state.tokenStartCharIndex ) input.consume();
+                state.type = 6;
+            }
+        }
+    }
+
+    /** All of text's WordLexer tokens, already buffered */
+    public static TokenStream words(final String text) {
+        TokenStream tokens =
+            new CommonTokenStream(new WordLexer() {{
+                setCharStream(new ANTLRStringStream(text));
+            }});
+        tokens.LT(1000); // buffer them all
+        return tokens;
+    }
+
+    @Test public void testParallelTokenSource() throws Exception {
+        String input = "ab cd\nef \"g\nh\" ij\nkl\n";
+        int[] splits = {6, 12, 18}; // 12 is inside the string
+        ParallelTokenSource lexer =
+            new ParallelTokenSource(
+                new ParallelTokenSource.LexerFactory() {
+                    public Lexer newLexer() { return new WordLexer(); }
+                },
+                new ANTLRStringStream(input), splits);
+        BufferedTokenStream found = new BufferedTokenStream(lexer);
+        found.fill();
+        WordLexer sequential = new WordLexer();
+        sequential.setCharStream(new ANTLRStringStream(input));
+        BufferedTokenStream expected = new BufferedTokenStream(sequential);
+        expected.fill();
+
+        assertEquals(expected.size(), found.size());
+        for (int i = 0; i < expected.size(); i++) {
+            CommonToken e = (CommonToken)expected.get(i);
+            CommonToken f = (CommonToken)found.get(i);
+            assertEquals(e.toString(), f.toString());
+        }
+        assertEquals("\"g\nh\"", found.get(6).getText());
+        assertEquals(4, found.get(10).getLine());
+    }
+
+    @Test public void testParallelTokenSourceErrors() throws Exception {
+        String input = "ab \"cd\nef\" gh\n\"ij";
+        int[] splits = {7}; // inside the string so chunk 1 looks unterminated
+        final List errors = Collections.synchronizedList(new ArrayList());
+        ParallelTokenSource lexer =
+            new ParallelTokenSource(
+                new ParallelTokenSource.LexerFactory() {
+                    public Lexer newLexer() {
+                        return new WordLexer() {
+                            public void mTokens() throws RecognitionException {
+                                int i = 1;
+                                if ( input.LA(1)=='"' ) {
+                                    do { i++; } while ( input.LA(i)!='"' && input.LA(i)!=CharStream.EOF );
+                                    if ( input.LA(i)==CharStream.EOF ) {
+                                        throw new NoViableAltException("", 0, 0, input);
+                                    }
+                                }
+                                super.mTokens();
+                            }
+                            public void emitErrorMessage(String msg) {
+                                errors.add(msg);
+                            }
+                        };
+                    }
+                },
+                new ANTLRStringStream(input), splits);
+        BufferedTokenStream found = new BufferedTokenStream(lexer);
+        found.fill();
+        assertEquals("[line 3:0 no viable alternative at character '\"']", errors.toString());
+        assertEquals("\"cd\nef\"", found.get(2).getText());
+    }
+
+    @Test public void testPipelinedTokenStream() throws Exception {
+        StringBuffer input = new StringBuffer();
+        for (int i = 0; i < 1000; i++) input.append("ab cd\n");
+        WordLexer lexer = new WordLexer();
+        lexer.setCharStream(new ANTLRStringStream(input.toString()));
+        PipelinedTokenStream tokens =
+            new PipelinedTokenStream(lexer, Token.DEFAULT_CHANNEL, 4); // tiny ring
+
+        assertEquals("ab", tokens.LT(1).getText());
+        int m = tokens.mark();
+        for (int i = 0; i < 500; i++) tokens.consume();
+        assertEquals("ab", tokens.LT(1).getText());
+        assertEquals(1000, tokens.LT(1).getTokenIndex());
+        tokens.rewind(m);
+        assertEquals(0, tokens.LT(1).getTokenIndex());
+        tokens.fill();
+        assertEquals(4001, tokens.size());
+        assertEquals(Token.EOF, tokens.get(4000).getType());
+    }
+
+    protected int countLexerThreads() {
+        int n = 0;
+        Iterator it = Thread.getAllStackTraces().keySet().iterator();
+        while ( it.hasNext() ) {
+            Thread t = (Thread)it.next();
+            if ( t.isAlive() && t.getName().equals("PipelinedTokenStream") ) n++;
+        }
+        return n;
+    }
+
+    protected boolean waitForLexerThreads(int n) throws InterruptedException {
+        for (int i = 0; i < 200 && countLexerThreads()!=n; i++) Thread.sleep(10);
+        return countLexerThreads()==n;
+    }
+
+    @Test public void testPipelinedTokenStreamThreadEnds() throws Exception {
+        StringBuffer input = new StringBuffer();
+        for (int i = 0; i < 1000; i++) input.append("ab cd\n");
+        int before = countLexerThreads();
+        WordLexer lexer = new WordLexer();
+        lexer.setCharStream(new ANTLRStringStream(input.toString()));
+        PipelinedTokenStream tokens =
+            new PipelinedTokenStream(lexer, Token.DEFAULT_CHANNEL, 4);
+        assertEquals("ab", tokens.LT(1).getText());
+        assertEquals(before+1, countLexerThreads()); // waiting on a full ring
+        tokens.close(); // as if we gave up after a syntax error
+        assertTrue(waitForLexerThreads(before));
+
+        lexer = new WordLexer();
+        lexer.setCharStream(new ANTLRStringStream("ab cd"));
+        tokens = new PipelinedTokenStream(lexer);
+        tokens.fill();
+        assertEquals(4, tokens.size());
+        assertTrue(waitForLexerThreads(before)); // ends at EOF
+    }
+
+    @Test public void testIncrementalTokenStream() throws Exception {
+        IncrementalTokenStream tokens =
+            new IncrementalTokenStream(new WordLexer(), "ab cd\nef gh");
+        RecognizerSharedState state = new RecognizerSharedState();
+        state.ruleMemoTables = new IntIntHashMap[2];
+        Parser parser = new Parser(tokens, state);
+        state.backtracking = 1;
+        for (int i = 0; i <= 6; i += 2) { // memoize rule 1 at each word
+            parser.getRuleMemoization(1, i);
+            tokens.seek(i);
+            tokens.LT(1);
+            tokens.consume();
+            parser.memoize(tokens, 1, i);
+        }
+
+        tokens.edit(3, 0, "x y ");
+        assertEquals("ab x y cd\nef gh", tokens.getText());
+        tokens.resetParser(parser);
+        assertEquals("ab", tokens.LT(1).getText());
+        assertEquals("cd", tokens.get(6).getText());
+        CommonToken ef = (CommonToken)tokens.get(8);
+        assertEquals(8, ef.getTokenIndex());
+        assertEquals(2, ef.getLine());
+        assertEquals(10, ef.getStartIndex());
+        assertEquals(1, parser.getRuleMemoization(1, 0)); // before the edit
+        assertEquals(Parser.MEMO_RULE_UNKNOWN, parser.getRuleMemoization(1, 2));
+        assertEquals(7, parser.getRuleMemoization(1, 6)); // was cd at 2
+        assertEquals(9, parser.getRuleMemoization(1, 8)); // was ef at 4
+    }
+
+    @Test public void testRuleMemoFromOlderGeneratedCode() throws Exception {
+        WordLexer lexer = new WordLexer();
+        lexer.setCharStream(new ANTLRStringStream("ab cd"));
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        RecognizerSharedState state = new RecognizerSharedState();
+        state.ruleMemo = new java.util.HashMap[3]; // what older parsers allocate
+        Parser parser = new Parser(tokens, state);
+        state.backtracking = 1;
+        assertEquals(Parser.MEMO_RULE_UNKNOWN, parser.getRuleMemoization(2, 0));
+        tokens.consume();
+        parser.memoize(tokens, 2, 0);
+        assertEquals(3, state.ruleMemoTables.length);
+        assertEquals(1, parser.getRuleMemoization(2, 0)); // stops before the space
+        assertTrue(state.ruleMemo[2]==null); // nothing lands in the old maps
+        parser.reset();
+        assertEquals(Parser.MEMO_RULE_UNKNOWN, parser.getRuleMemoization(2, 0));
+    }
+}
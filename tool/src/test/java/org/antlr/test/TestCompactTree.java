@@ -0,0 +1,212 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.antlr.runtime.*;
+import org.antlr.runtime.tree.*;
+import org.antlr.stringtemplate.StringTemplate;
+import org.junit.Test;
+
+public class TestCompactTree extends BaseTest {
+	/** output=AST parser plus a tree parser over the same nodes */
+	public static final String AST_GRAMMAR =
+		"grammar T;\n" +
+		"options {output=AST;}\n" +
+		"tokens {PLUS;}\n" +
+		"s : e (';'! e)* ;\n" +
+		"e : a=ID '+' b=ID -> ^(PLUS $a $b)\n" +
+		"  | ID '-'^ ID\n" +
+		"  ;\n" +
+		"ID : 'a'..'z'+ ;\n" +
+		"WS : (' '|'\\n') {$channel=HIDDEN;} ;\n";
+
+	public static final String TREE_GRAMMAR =
+		"tree grammar TP;\n" +
+		"options {tokenVocab=T;}\n" +
+		"s : e+ ;\n" +
+		"e : ^(PLUS ID ID) {System.out.println(\"add \"+$text);}\n" +
+		"  | ^('-' ID ID) {System.out.println(\"sub \"+$text);}\n" +
+		"  ;\n";
+
+	/** Test.java for a generated parser that builds its tree with
+	 *  adaptorClass, which must have a (TokenStream) constructor.  Prints
+	 *  the tree through the adaptor (the nodes needn't implement Tree) then
+	 *  runs the tree parser, if any, over the same adaptor.
+	 */
+	public static String adaptorTestFile(String adaptorClass,
+										 String parserName,
+										 String treeParserName,
+										 String lexerName,
+										 String parserStartRuleName,
+										 String treeParserStartRuleName)
+	{
+		StringTemplate outputFileST = new StringTemplate(
+			"import org.antlr.runtime.*;\n" +
+			"import org.antlr.runtime.tree.*;\n" +
+			"\n" +
+			"public class Test {\n" +
+			"    static String toStringTree(TreeAdaptor adaptor, Object t) {\n" +
+			"        int n = adaptor.getChildCount(t);\n" +
+			"        if ( n==0 ) return adaptor.getText(t);\n" +
+			"        StringBuffer buf = new StringBuffer();\n" +
+			"        if ( !adaptor.isNil(t) ) buf.append('(').append(adaptor.getText(t)).append(' ');\n" +
+			"        for (int i = 0; i < n; i++) {\n" +
+			"            if ( i>0 ) buf.append(' ');\n" +
+			"            buf.append(toStringTree(adaptor, adaptor.getChild(t, i)));\n" +
+			"        }\n" +
+			"        if ( !adaptor.isNil(t) ) buf.append(')');\n" +
+			"        return buf.toString();\n" +
+			"    }\n" +
+			"\n" +
+			"    public static void main(String[] args) throws Exception {\n" +
+			"        CharStream input = new ANTLRFileStream(args[0], \"UTF-8\");\n" +
+			"        $lexerName$ lex = new $lexerName$(input);\n" +
+			"        CommonTokenStream tokens = new CommonTokenStream(lex);\n" +
+			"        $adaptorClass$ adaptor = new $adaptorClass$(tokens);\n" +
+			"        $parserName$ parser = new $parserName$(tokens);\n" +
+			"        parser.setTreeAdaptor(adaptor);\n" +
+			"        Object t = parser.$parserStartRuleName$().getTree();\n" +
+			"        System.out.println(toStringTree(adaptor, t));\n" +
+			"        $if(treeParserStartRuleName)$\n" +
+			"        CommonTreeNodeStream nodes = new CommonTreeNodeStream(adaptor, t);\n" +
+			"        nodes.setTokenStream(tokens);\n" +
+			"        new $treeParserName$(nodes).$treeParserStartRuleName$();\n" +
+			"        $endif$\n" +
+			"    }\n" +
+			"}"
+			);
+		outputFileST.setAttribute("adaptorClass", adaptorClass);
+		outputFileST.setAttribute("parserName", parserName);
+		outputFileST.setAttribute("treeParserName", treeParserName);
+		outputFileST.setAttribute("lexerName", lexerName);
+		outputFileST.setAttribute("parserStartRuleName", parserStartRuleName);
+		outputFileST.setAttribute("treeParserStartRuleName", treeParserStartRuleName);
+		return outputFileST.toString();
+	}
+
+	protected void writeTreeTestFile(String parserName,
+									 String treeParserName,
+									 String lexerName,
+									 String parserStartRuleName,
+									 String treeParserStartRuleName,
+									 boolean debug)
+	{
+		writeFile(tmpdir, "Test.java",
+				  adaptorTestFile("CompactTreeAdaptor", parserName, treeParserName,
+								  lexerName, parserStartRuleName,
+								  treeParserStartRuleName));
+	}
+
+	@Test public void testGeneratedParserBuildsCompactTrees() throws Exception {
+		String found = execTreeParser("T.g", AST_GRAMMAR, "TParser", "TP.g",
+									  TREE_GRAMMAR, "TP", "TLexer", "s", "s",
+									  "x + y; a - b");
+		assertEquals("(PLUS x y) (- a b)\n" +
+					 "add x + y\n" +
+					 "sub a - b\n", found);
+	}
+
+	@Test public void testTreeRefersToStreamTokens() throws Exception {
+		TokenStream tokens = TestCommonTokenStream.words("a b c");
+		CompactTreeAdaptor adaptor = new CompactTreeAdaptor(tokens);
+		// ^(a b c) built as a parser would
+		Object root = adaptor.nil();
+		Object a = adaptor.create(tokens.get(0));
+		root = adaptor.becomeRoot(a, root);
+		adaptor.addChild(root, adaptor.create(tokens.get(2)));
+		adaptor.addChild(root, adaptor.create(tokens.get(4)));
+		root = adaptor.rulePostProcessing(root);
+		assertEquals("(a b c)", ((Tree)root).toStringTree());
+		assertEquals(0, ((CompactTree)root).getTokenHandle());
+		assertEquals(4, ((CompactTree)adaptor.getChild(root, 1)).getTokenHandle());
+		assertTrue(root==adaptor.getParent(adaptor.getChild(root, 1)));
+		assertEquals(1, adaptor.getChildIndex(adaptor.getChild(root, 1)));
+		assertEquals(4, adaptor.getTokenStopIndex(adaptor.getChild(root, 1)));
+	}
+
+	@Test public void testImaginaryAndRewrittenTokens() throws Exception {
+		TokenStream tokens = TestCommonTokenStream.words("a b");
+		CompactTreeAdaptor adaptor = new CompactTreeAdaptor(tokens);
+		Object block = adaptor.create(99, "BLOCK");
+		Object b = adaptor.create(98, tokens.get(2)); // like ID[$b] with a new type
+		adaptor.addChild(block, b);
+		adaptor.addChild(block, adaptor.create(tokens.get(0)));
+		assertEquals("(BLOCK b a)", ((Tree)block).toStringTree());
+		assertTrue(((CompactTree)block).getTokenHandle()<-1);
+		assertTrue(((CompactTree)b).getTokenHandle()<-1);
+		assertEquals(98, adaptor.getType(b));
+		assertEquals(2, adaptor.getTokenStartIndex(b));
+		assertEquals(6, tokens.get(2).getType()); // stream token unchanged
+		adaptor.setText(b, "x");
+		assertEquals("x", adaptor.getText(b));
+		assertEquals("b", tokens.get(2).getText());
+	}
+
+	@Test public void testNilListsAndRewrites() throws Exception {
+		TokenStream tokens = TestCommonTokenStream.words("a b c d");
+		CompactTreeAdaptor adaptor = new CompactTreeAdaptor(tokens);
+		Object list = adaptor.nil();
+		for (int i = 2; i <= 6; i += 2) {
+			adaptor.addChild(list, adaptor.create(tokens.get(i)));
+		}
+		Object r = adaptor.create(tokens.get(0));
+		adaptor.addChild(r, list);
+		assertEquals("(a b c d)", ((Tree)r).toStringTree());
+		assertEquals(3, adaptor.getChildCount(r));
+
+		Object x = adaptor.create(7, "x");
+		adaptor.replaceChildren(r, 0, 1, x);
+		assertEquals("(a x d)", ((Tree)r).toStringTree());
+		assertEquals(1, adaptor.getChildIndex(adaptor.getChild(r, 1)));
+		adaptor.deleteChild(r, 0);
+		assertEquals("(a d)", ((Tree)r).toStringTree());
+		Object dup = adaptor.dupTree(r);
+		assertEquals("(a d)", ((Tree)dup).toStringTree());
+	}
+
+	@Test public void testTreeNodeStreamWalksCompactTree() throws Exception {
+		TokenStream tokens =
+			new CompactTokenStream(new TestCommonTokenStream.WordLexer() {{
+				setCharStream(new ANTLRStringStream("a b c"));
+			}});
+		tokens.LT(1000);
+		CompactTreeAdaptor adaptor = new CompactTreeAdaptor(tokens);
+		Object r = adaptor.create(tokens.get(0));
+		Object b = adaptor.create(tokens.get(2));
+		adaptor.addChild(b, adaptor.create(tokens.get(4)));
+		adaptor.addChild(r, b);
+		assertEquals(0, ((CompactTree)r).getTokenHandle()); // views match too
+		CommonTreeNodeStream nodes = new CommonTreeNodeStream(adaptor, r);
+		StringBuffer buf = new StringBuffer();
+		while ( nodes.LA(1)!=Token.EOF ) {
+			buf.append(nodes.LA(1)).append(' ');
+			nodes.consume();
+		}
+		assertEquals("6 2 6 2 6 3 3 ", buf.toString());
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.antlr.runtime.misc.IntIntHashMap;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestIntIntHashMap {
+    @Test public void testPutGet() throws Exception {
+        IntIntHashMap m = new IntIntHashMap();
+        m.put(3, 30);
+        m.put(-1, 10);
+        m.put(3, 31);
+        assertEquals(2, m.size());
+        assertEquals(31, m.get(3, -99));
+        assertEquals(10, m.get(-1, -99));
+        assertEquals(-99, m.get(4, -99));
+    }
+
+    @Test public void testGrow() throws Exception {
+        IntIntHashMap m = new IntIntHashMap();
+        for (int i = 0; i < 10000; i++) m.put(i, i*2);
+        assertEquals(10000, m.size());
+        for (int i = 0; i < 10000; i++) assertEquals(i*2, m.get(i, -1));
+        assertTrue(m.capacity()>=20000);
+    }
+
+    @Test public void testRemoveKeysBelow() throws Exception {
+        IntIntHashMap m = new IntIntHashMap();
+        for (int i = 0; i < 10000; i++) m.put(i, i);
+        assertEquals(9990, m.removeKeysBelow(9990));
+        assertEquals(10, m.size());
+        assertEquals(-1, m.get(5, -1));
+        assertEquals(9995, m.get(9995, -1));
+        assertTrue(m.capacity()<=64); // shrank
+        assertEquals(0, m.removeKeysBelow(100));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.DFA;
+import org.antlr.runtime.FlatDFA;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestLazyDFA {
+    /** ax predicts 1, ay predicts 2, b predicts 3; encoded as the
+     *  cyclicDFA template does, in (count, value) pairs.
+     */
+    static final DFA.Tables tables =
+        new DFA.Tables("\5\uffff", "\5\uffff", "\1a\1x\3\0", "\1b\1y\3\0",
+                       "\2\uffff\1\3\1\1\1\2", "\5\uffff",
+                       new String[] {"\1\1\1\2", "\1\3\1\4", "", "", ""});
+
+    @Test public void testDecodeUponPredict() throws Exception {
+        DFA dfa = new DFA() {
+            {
+                tables = TestLazyDFA.tables;
+            }
+        };
+        assertEquals(1, dfa.predict(new ANTLRStringStream("ax")));
+        assertEquals(2, dfa.predict(new ANTLRStringStream("ay")));
+        assertEquals(3, dfa.predict(new ANTLRStringStream("b")));
+    }
+
+    @Test public void testFlatDFADecodeUponPredict() throws Exception {
+        DFA dfa = new FlatDFA() {
+            {
+                tables = TestLazyDFA.tables;
+            }
+        };
+        assertEquals(2, dfa.predict(new ANTLRStringStream("ay")));
+        assertEquals(3, dfa.predict(new ANTLRStringStream("b")));
+    }
+}
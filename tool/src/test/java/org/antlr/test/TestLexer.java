@@ -251,4 +251,83 @@ public class TestLexer extends BaseTest {
 
         assertEquals(expecting, found);
     }
+
+	@Test public void testFlatDFA() throws Exception {
+		String grammar =
+			"grammar P;\n"+
+			"options {flatDFA=true;}\n"+
+			"a : (INT {System.out.print(\"i\");} | FLOAT {System.out.print(\"f\");}\n" +
+			"    | ID {System.out.print(\"d\");} | 'int' {System.out.print(\"k\");}\n" +
+			"    )+ EOF {System.out.println();} ;\n"+
+			"INT : '0'..'9'+ ;\n"+
+			"FLOAT : '0'..'9'+ '.' '0'..'9'* ;\n"+
+			"ID : ('a'..'z'|'\\u00e0'..'\\u00ff')+ ;\n"+
+			"WS : (' '|'\\n')+ {$channel=HIDDEN;} ;";
+		String found = execParser("P.g", grammar, "PParser", "PLexer",
+				    "a", "int 12 3.4 integer caf\u00e9 5.", debug);
+		assertEquals("kifddf\n", found);
+	}
+
+	@Test public void testLiteralRulesMatchedByTokensDFA() throws Exception {
+		// '=' '==' 'for' are consumed straight from mTokens() when the DFA
+		// scanned them; "fo" and "=x" make it stop early or go past them
+		String grammar =
+			"grammar P;\n"+
+			"a : ( t=. {System.out.print($t.text+\"/\"+$t.type+\" \");} )* EOF {System.out.println();} ;\n"+
+			"EQ : '=' ;\n"+
+			"EQEQ : '==' ;\n"+
+			"FOR : 'for' ;\n"+
+			"ID : 'a'..'z'+ ;\n"+
+			"WS : (' '|'\\n')+ {$channel=HIDDEN;} ;";
+		String found = execParser("P.g", grammar, "PParser", "PLexer",
+				    "a", "for fo forx == =x =", debug);
+		assertEquals("for/6 fo/7 forx/7 ==/5 =/4 x/7 =/4 \n", found);
+	}
+
+	@Test public void testLiteralRuleSkippedInTokens() throws Exception {
+		Grammar g = new Grammar(
+			"lexer grammar T;\n" +
+			"FOR : 'for' ;\n" +
+			"ID : 'a'..'z'+ ;\n"
+		);
+		Tool antlr = newTool();
+		antlr.setOutputDirectory(null); // write to /dev/null
+		CodeGenerator generator = new CodeGenerator(antlr, g, "Java");
+		g.setCodeGenerator(generator);
+		generator.genRecognizer();
+		String code = generator.getRecognizerST().toString();
+		assertTrue(code.indexOf("if ( matchPredicted(\"for\") ) {")>=0);
+		assertTrue(code.indexOf("matchPredicted(\"a\"")<0);
+	}
+
+	@Test public void testCharClassTables() throws Exception {
+		String grammar =
+			"grammar P;\n"+
+			"a : (INT {System.out.print(\"i\");} | ID {System.out.print(\"d\");}\n" +
+			"    | 'int' {System.out.print(\"k\");} )+ EOF {System.out.println();} ;\n"+
+			"INT : '0'..'9'+ ;\n"+
+			"ID : ('a'..'z'|'\\u00e0'..'\\u00ff'|'\\u4e00'..'\\u9fff')+ ;\n"+
+			"WS : (' '|'\\n')+ {$channel=HIDDEN;} ;";
+		String found = execParser("P.g", grammar, "PParser", "PLexer",
+				    "a", "int 12 integer caf\u00e9 \u4e2d\u6587 in7", debug);
+		assertEquals("kiddddi\n", found);
+	}
+
+	@Test public void testCharClassesShareOneMap() throws Exception {
+		Grammar g = new Grammar(
+			"lexer grammar T;\n" +
+			"ID : ('a'..'z'|'\\u00e0'..'\\u00ff')+ ;\n" +
+			"INT : '0'..'9'+ ;\n" +
+			"FLOAT : '0'..'9'+ '.' ;\n" // INT vs FLOAT needs a cyclic DFA
+		);
+		Tool antlr = newTool();
+		antlr.setOutputDirectory(null); // write to /dev/null
+		CodeGenerator generator = new CodeGenerator(antlr, g, "Java");
+		g.setCodeGenerator(generator);
+		generator.genRecognizer();
+		String code = generator.getRecognizerST().toString();
+		assertTrue(code.indexOf("static final DFA.CharClasses DFA_charClasses")>=0);
+		// letters, digits, '.' and everything else
+		assertEquals(4, generator.getCharClasses().getNumberOfClasses());
+	}
 }
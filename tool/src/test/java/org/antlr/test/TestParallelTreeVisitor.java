@@ -0,0 +1,178 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.tree.*;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestParallelTreeVisitor {
+	public static final int FUNC = 10;
+	public static final int ID = 11;
+	public static final int ZERO = 12;
+
+	/** ^(nil ^(FUNC ID ^(ID ZERO ID)) ...) with n functions */
+	protected Tree program(int n) {
+		Tree root = new CommonTree((CommonToken)null);
+		for (int i = 0; i < n; i++) {
+			Tree f = new CommonTree(new CommonToken(FUNC, "f"+i));
+			f.addChild(new CommonTree(new CommonToken(ID, "a")));
+			Tree e = new CommonTree(new CommonToken(ID, "b"));
+			e.addChild(new CommonTree(new CommonToken(ZERO, "0")));
+			e.addChild(new CommonTree(new CommonToken(ID, "c")));
+			f.addChild(e);
+			root.addChild(f);
+		}
+		return root;
+	}
+
+	@Test public void testVisitsEveryNodeOnce() throws Exception {
+		Tree t = program(200);
+		final AtomicInteger pres = new AtomicInteger();
+		final AtomicInteger posts = new AtomicInteger();
+		final Set threads = Collections.synchronizedSet(new HashSet());
+		final AtomicInteger actions = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		ParallelTreeVisitor v = new ParallelTreeVisitor(new CommonTreeAdaptor(), pool);
+		v.splitAtTypes(new int[] {FUNC});
+		Object r = v.visit(t, new ParallelTreeVisitor.ActionFactory() {
+			public TreeVisitorAction newAction() {
+				actions.incrementAndGet();
+				threads.add(Thread.currentThread());
+				return new TreeVisitorAction() {
+					public Object pre(Object t) { pres.incrementAndGet(); return t; }
+					public Object post(Object t) { posts.incrementAndGet(); return t; }
+				};
+			}
+		});
+		pool.shutdown();
+		assertSame(t, r);
+		assertEquals(200*5, pres.get()); // nil root gets no actions
+		assertEquals(200*5, posts.get());
+		assertEquals(threads.size(), actions.get()); // one per thread
+		assertTrue(actions.get()<=5); // 4 in the pool plus this one
+	}
+
+	@Test public void testSubtreeRewritesReplaceChildren() throws Exception {
+		Tree t = program(50);
+		ParallelTreeVisitor v = new ParallelTreeVisitor(new CommonTreeAdaptor());
+		v.splitAtDepth(2); // the children of each FUNC
+		t = (Tree)v.visit(t, new ParallelTreeVisitor.ActionFactory() {
+			public TreeVisitorAction newAction() {
+				return new TreeVisitorAction() {
+					public Object pre(Object t) { return t; }
+					public Object post(Object t) {
+						// ^(ID ZERO x) -> ZERO
+						Tree n = (Tree)t;
+						if ( n.getChildCount()==2 && n.getChild(0).getType()==ZERO ) {
+							return n.getChild(0);
+						}
+						return t;
+					}
+				};
+			}
+		});
+		assertEquals(50, t.getChildCount());
+		assertEquals("(f0 a 0)", t.getChild(0).toStringTree());
+		assertEquals("(f49 a 0)", t.getChild(49).toStringTree());
+		assertSame(t.getChild(49), t.getChild(49).getChild(1).getParent());
+	}
+
+	@Test public void testTreeRewriterPerThread() throws Exception {
+		// ^(nil ^(+ ^(* 0 a) ^(+2 b c)) ...); rewrite each split-off * to 0
+		final CommonTree t = new CommonTree((CommonToken)null);
+		for (int i = 0; i < 100; i++) {
+			Tree p = new CommonTree(new CommonToken(TestTreeFilter.PLUS, "+"));
+			Tree m = new CommonTree(new CommonToken(TestTreeFilter.MULT, "*"));
+			m.addChild(new CommonTree(new CommonToken(TestTreeFilter.ZERO, "0")));
+			m.addChild(new CommonTree(new CommonToken(TestTreeFilter.ID, "a")));
+			p.addChild(m);
+			Tree q = new CommonTree(new CommonToken(TestTreeFilter.PLUS, "+2"));
+			q.addChild(new CommonTree(new CommonToken(TestTreeFilter.ID, "b")));
+			q.addChild(new CommonTree(new CommonToken(TestTreeFilter.ID, "c")));
+			p.addChild(q);
+			t.addChild(p);
+		}
+		final CommonTreeAdaptor adaptor = new CommonTreeAdaptor();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		ParallelTreeVisitor v = new ParallelTreeVisitor(adaptor, pool);
+		v.splitAtTypes(new int[] {TestTreeFilter.MULT});
+		Object r = v.visit(t, new ParallelTreeVisitor.ActionFactory() {
+			public TreeVisitorAction newAction() {
+				CommonTreeNodeStream nodes = new CommonTreeNodeStream(adaptor, t);
+				return new TestTreeFilter.ZeroRewriter(nodes).getDownUpActions();
+			}
+		});
+		pool.shutdown();
+		assertSame(t, r);
+		assertEquals(100, t.getChildCount());
+		for (int i = 0; i < 100; i++) {
+			assertEquals("(+ 0 (+2 b c))", t.getChild(i).toStringTree());
+		}
+		t.sanityCheckParentAndChildIndexes();
+	}
+
+	@Test public void testExceptionInSubtreeIsRethrown() throws Exception {
+		CommonTree t = (CommonTree)program(10);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		ParallelTreeVisitor v = new ParallelTreeVisitor(new CommonTreeAdaptor(), pool);
+		v.splitAtTypes(new int[] {FUNC});
+		try {
+			v.visit(t, new ParallelTreeVisitor.ActionFactory() {
+				public TreeVisitorAction newAction() {
+					return new TreeVisitorAction() {
+						public Object pre(Object t) {
+							if ( ((Tree)t).getText().equals("f7") ) {
+								throw new IllegalStateException("f7");
+							}
+							return t;
+						}
+						public Object post(Object t) { return t; }
+					};
+				}
+			});
+			fail("no exception");
+		}
+		catch (IllegalStateException ise) {
+			assertEquals("f7", ise.getMessage());
+		}
+		pool.shutdown();
+		// every split-off FUNC is back in place, even those still running
+		assertEquals(10, t.getChildCount());
+		t.sanityCheckParentAndChildIndexes();
+	}
+}
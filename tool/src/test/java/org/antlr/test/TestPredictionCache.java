@@ -0,0 +1,95 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.DFA;
+import org.antlr.runtime.PredictionCache;
+import org.junit.Test;
+
+public class TestPredictionCache extends BaseTest {
+    /** ax predicts 1, ay predicts 2, b predicts 3 */
+    protected DFA newDFA() {
+        return new DFA() {
+            {
+                eot = new short[] {-1,-1,-1,-1,-1};
+                eof = new short[] {-1,-1,-1,-1,-1};
+                min = new char[] {'a','x',0,0,0};
+                max = new char[] {'b','y',0,0,0};
+                accept = new short[] {-1,-1,3,1,2};
+                special = new short[] {-1,-1,-1,-1,-1};
+                transition = new short[][] {{1,2},{3,4},{},{},{}};
+            }
+        };
+    }
+
+    @Test public void testCachedPredictions() throws Exception {
+        DFA dfa = newDFA();
+        dfa.setPredictionCacheSize(16);
+        String[] inputs = {"ax", "ay", "b", "ax", "ay", "b"};
+        int[] alts = {1, 2, 3, 1, 2, 3};
+        for (int i = 0; i < inputs.length; i++) {
+            ANTLRStringStream input = new ANTLRStringStream(inputs[i]);
+            assertEquals(alts[i], dfa.predict(input));
+            assertEquals(0, input.index()); // rewound
+        }
+        PredictionCache cache = dfa.getPredictionCache();
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test public void testRecognizerTurnsOnEveryCache() throws Exception {
+        String grammar =
+            "grammar T;\n" +
+            "s @init {setPredictionCacheSize(64);}\n" +
+            "  : a+ {System.out.println(getPredictionCacheHits()+\" hits, \"+\n" +
+            "                          getPredictionCacheMisses()+\" misses\");}\n" +
+            "  ;\n" +
+            "a : ID+ '.' {System.out.println(\"dot\");}\n" + // a cyclic DFA
+            "  | ID+ ';' {System.out.println(\"semi\");}\n" +
+            "  ;\n" +
+            "ID : 'a'..'z'+ ;\n" +
+            "WS : ' '+ {skip();} ;\n";
+        String found = execParser("T.g", grammar, "TParser", "TLexer",
+                                  "s", "a b . c d ; e f . g h ; i j .", false);
+        // keys run one past the '.' or ';' so the last a, before EOF, misses
+        assertEquals("dot\nsemi\ndot\nsemi\ndot\n" +
+                     "2 hits, 3 misses\n", found);
+    }
+
+    @Test public void testPredicatesBypassCache() throws Exception {
+        DFA dfa = new DFA() {
+            {
+                accept = new short[] {-1,3};
+                special = new short[] {-1,0};
+            }
+        };
+        dfa.setPredictionCacheSize(16);
+        assertNull(dfa.getPredictionCache());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.antlr.runtime.*;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TestRecognizerPool {
+    /** Matches the words of TestCommonTokenStream.WordLexer */
+    public static class WordParser extends Parser {
+        public WordParser(TokenStream input) {
+            super(input);
+        }
+
+        public String words() {
+            StringBuffer buf = new StringBuffer();
+            while ( input.LA(1)!=Token.EOF ) {
+                buf.append(input.LT(1).getText()).append(',');
+                input.consume();
+            }
+            return buf.toString();
+        }
+    }
+
+    protected RecognizerPool<TestCommonTokenStream.WordLexer,WordParser> newPool() {
+        return new RecognizerPool<TestCommonTokenStream.WordLexer,WordParser>(
+            new RecognizerPool.Factory<TestCommonTokenStream.WordLexer,WordParser>() {
+                public TestCommonTokenStream.WordLexer newLexer() {
+                    return new TestCommonTokenStream.WordLexer();
+                }
+                public WordParser newParser(TokenStream input) {
+                    return new WordParser(input);
+                }
+            });
+    }
+
+    @Test public void testReuse() throws Exception {
+        RecognizerPool<TestCommonTokenStream.WordLexer,WordParser> pool = newPool();
+        RecognizerPool.Recognizers<TestCommonTokenStream.WordLexer,WordParser> r =
+            pool.get("ab cd");
+        assertEquals("ab,cd,", r.parser.words());
+        RecognizerPool.Recognizers<TestCommonTokenStream.WordLexer,WordParser> r2 =
+            pool.get("x \"y z\"\nw");
+        assertSame(r, r2);
+        assertEquals("x,\"y z\",w,", r2.parser.words());
+        assertEquals(2, r2.tokens.LT(-1).getLine()); // lexer state was reset
+        assertEquals("q,", pool.get(new ANTLRStringStream("q")).parser.words());
+    }
+
+    @Test public void testTokensKeepTheirText() throws Exception {
+        RecognizerPool<TestCommonTokenStream.WordLexer,WordParser> pool = newPool();
+        RecognizerPool.Recognizers<TestCommonTokenStream.WordLexer,WordParser> r =
+            pool.get("ab cd");
+        r.parser.words();
+        Token ab = r.tokens.get(0);
+        pool.get("xy zw").parser.words();
+        assertEquals("ab", ab.getText());
+    }
+
+    @Test public void testOnePerThread() throws Exception {
+        final RecognizerPool<TestCommonTokenStream.WordLexer,WordParser> pool = newPool();
+        final Object[] other = new Object[1];
+        Thread t = new Thread() {
+            public void run() {
+                other[0] = pool.get("ab");
+            }
+        };
+        t.start();
+        t.join();
+        assertNotSame(other[0], pool.get("ab"));
+    }
+}
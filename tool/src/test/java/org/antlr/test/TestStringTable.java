@@ -0,0 +1,72 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.antlr.runtime.misc.CharArraySlice;
+import org.antlr.runtime.misc.StringTable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestStringTable {
+    @Test public void testInternFromChars() throws Exception {
+        StringTable t = new StringTable();
+        char[] data = "abc abc ab".toCharArray();
+        String a = t.intern(data, 0, 3);
+        String b = t.intern(data, 4, 3);
+        String c = t.intern(data, 8, 2);
+        assertEquals("abc", a);
+        assertSame(a, b);
+        assertEquals("ab", c);
+        assertEquals(2, t.size());
+    }
+
+    @Test public void testInternStringMatchesChars() throws Exception {
+        StringTable t = new StringTable();
+        String s = t.intern(new String("foo"));
+        assertSame(s, t.intern("xfoox".toCharArray(), 1, 3));
+    }
+
+    @Test public void testGrow() throws Exception {
+        StringTable t = new StringTable();
+        for (int i=0; i<1000; i++) t.intern("s"+i);
+        assertEquals(1000, t.size());
+        String s = t.intern("s500");
+        assertSame(s, t.intern("s500".toCharArray(), 0, 4));
+        assertEquals(1000, t.size());
+    }
+
+    @Test public void testSlice() throws Exception {
+        CharArraySlice s = new CharArraySlice("hello world".toCharArray(), 6, 5);
+        assertEquals("world", s.toString());
+        assertEquals("world".hashCode(), s.hashCode());
+        assertEquals('r', s.charAt(2));
+        assertEquals("or", s.subSequence(1,3).toString());
+    }
+}
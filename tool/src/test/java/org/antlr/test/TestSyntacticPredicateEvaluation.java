@@ -417,4 +417,94 @@ public class TestSyntacticPredicateEvaluation extends BaseTest {
 		assertEquals("alt1\n", found);
 	}
 
+	/** Reports each synpred result stored and each one found in the memo */
+	static final String MEMO_MEMBERS =
+		"@members {\n" +
+		"public int getSynpredMemoization(int i, int start) {\n" +
+		"    int memo = super.getSynpredMemoization(i, start);\n" +
+		"    if ( memo!=MEMO_RULE_UNKNOWN ) System.out.println(\"hit \"+start);\n" +
+		"    return memo;\n" +
+		"}\n" +
+		"public void memoizeSynpred(int i, int start, boolean success) {\n" +
+		"    System.out.println(\"eval \"+start+\" \"+success);\n" +
+		"    super.memoizeSynpred(i, start, success);\n" +
+		"}\n" +
+		"}\n";
+
+	static final String MEMO_GRAMMAR =
+		"s : (a '.')=> a '.' {System.out.println(\"alt 1\");}\n" +
+		"  | a ';' {System.out.println(\"alt 2\");}\n" +
+		"  ;\n" +
+		"a : (b)=> b | c ;\n" +
+		"b : '(' 'x' ')' ;\n" +
+		"c : '(' c ')' | 'x' ;\n" +
+		"WS : (' '|'\\n')+ {$channel=HIDDEN;}\n" +
+		"   ;\n";
+
+	@Test public void testSynpredResultsAreMemoized() throws Exception {
+		// (b)=> is tried at the same token inside (a '.')=> and then again
+		// when we parse alt 2 for real; the second time is a cache hit.
+		String grammar =
+			"grammar T;\n" +
+			MEMO_MEMBERS +
+			MEMO_GRAMMAR;
+		String found = execParser("T.g", grammar, "TParser", "TLexer",
+				    "s", "(x) ;", false);
+		String expecting =
+			"eval 0 true\n" +
+			"eval 0 false\n" +
+			"hit 0\n" +
+			"alt 2\n";
+		assertEquals(expecting, found);
+	}
+
+	@Test public void testMemoizeSynpredsFalseTurnsOffMemo() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			"options {memoizeSynpreds=false;}\n" +
+			MEMO_MEMBERS +
+			MEMO_GRAMMAR;
+		String found = execParser("T.g", grammar, "TParser", "TLexer",
+				    "s", "(x) ;", false);
+		assertEquals("alt 2\n", found);
+	}
+
+	@Test public void testSynpredReachingInitActionIsNotMemoized() throws Exception {
+		// @init runs while backtracking, so each (b)=> must really run b
+		String grammar =
+			"grammar T;\n" +
+			MEMO_MEMBERS +
+			MEMO_GRAMMAR.replaceFirst("b : ",
+				"b\n@init {System.out.println(\"enter b\");}\n   : ");
+		String found = execParser("T.g", grammar, "TParser", "TLexer",
+				    "s", "(x) ;", false);
+		String expecting =
+			"enter b\n" +
+			"enter b\n" +
+			"enter b\n" +
+			"enter b\n" +
+			"alt 2\n";
+		assertEquals(expecting, found);
+	}
+
+	@Test public void testSynpredReachingSemPredIsNotMemoized() throws Exception {
+		// (p)=> fails at x inside (e 'X')=> since allowed is false; alt 2
+		// sets it and tries (p)=> at x again, which must now pass.
+		String grammar =
+			"grammar T;\n" +
+			"@members {boolean allowed = false;}\n" +
+			"s : (e 'X')=> e 'X'\n" +
+			"  | {allowed=true;} e 'Y' {System.out.println(\"Y\");}\n" +
+			"  ;\n" +
+			"e : '(' e ')' | r ;\n" +
+			"r : (p)=> p {System.out.print(\"p\");} | ID {System.out.print(\"id\");} ;\n" +
+			"p : ID {allowed}? ;\n" +
+			"ID : 'a'..'z'+ ;\n" +
+			"WS : (' '|'\\n')+ {$channel=HIDDEN;}\n" +
+			"   ;\n" ;
+		String found = execParser("T.g", grammar, "TParser", "TLexer",
+				    "s", "( x ) Y", false);
+		assertEquals("pY\n", found);
+	}
+
 }
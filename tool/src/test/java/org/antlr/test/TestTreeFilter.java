@@ -0,0 +1,293 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.antlr.Tool;
+import org.antlr.codegen.CodeGenerator;
+import org.antlr.runtime.BitSet;
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.ParseCancelledException;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.RecognizerSharedState;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.WorkBudgetExceededException;
+import org.antlr.runtime.tree.*;
+import org.antlr.tool.Grammar;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class TestTreeFilter extends BaseTest {
+	public static final int PLUS = 4;
+	public static final int MULT = 5;
+	public static final int ID = 6;
+	public static final int ZERO = 7;
+
+	/** Counts topdown() calls and the states and streams it ran with */
+	public static class CountingFilter extends TreeFilter {
+		public int topdownCalls = 0;
+		public StringBuffer matched = new StringBuffer();
+		public Set states = new HashSet();
+		public Set inputs = new HashSet();
+
+		public CountingFilter(TreeNodeStream input) {
+			super(input);
+			topdownRootTypes = new BitSet(new long[] {1L<<PLUS});
+		}
+
+		public void topdown() throws RecognitionException {
+			topdownCalls++;
+			states.add(state);
+			inputs.add(input);
+			Object t = input.LT(1);
+			match(input, PLUS, null);
+			if ( state.failed ) return;
+			matched.append(((Tree)t).getText());
+		}
+
+		public void bottomup() throws RecognitionException {
+			states.add(state);
+			inputs.add(input);
+		}
+	}
+
+	/** ^(MULT ZERO x) -> ZERO, bottom-up */
+	public static class ZeroRewriter extends TreeRewriter {
+		public int bottomupCalls = 0;
+
+		public ZeroRewriter(TreeNodeStream input) {
+			super(input);
+			bottomupRootTypes = new BitSet(new long[] {1L<<MULT});
+		}
+
+		public Object bottomup() throws RecognitionException {
+			bottomupCalls++;
+			Object t = input.LT(1);
+			match(input, MULT, null); if ( state.failed ) return null;
+			match(input, Token.DOWN, null); if ( state.failed ) return null;
+			final Object zero = input.LT(1);
+			match(input, ZERO, null); if ( state.failed ) return null;
+			matchAny(input); if ( state.failed ) return null;
+			match(input, Token.UP, null); if ( state.failed ) return null;
+			TreeRuleReturnScope r = new TreeRuleReturnScope() {
+				public Object getTree() { return zero; }
+			};
+			r.start = t;
+			return r;
+		}
+	}
+
+	/** Polls for cancellation and spends a unit of work at every node,
+	 *  as generated rules and DFAs do; cancels itself at cancelAt and
+	 *  sleeps at sleepAt.
+	 */
+	public static class StoppableFilter extends TreeFilter {
+		public int topdownCalls = 0;
+		public int cancelAt = -1;
+		public int sleepAt = -1;
+
+		public StoppableFilter(TreeNodeStream input, RecognizerSharedState state) {
+			super(input, state);
+		}
+
+		public void topdown() throws RecognitionException {
+			if ( state.cancelled ) throwCancelled(input);
+			spendWork(input, 1);
+			topdownCalls++;
+			if ( topdownCalls==cancelAt ) cancel();
+			if ( topdownCalls==sleepAt ) {
+				try { Thread.sleep(500); } catch (InterruptedException ie) { ; }
+			}
+		}
+	}
+
+	protected Tree node(int type, String text) {
+		return new CommonTree(new CommonToken(type, text));
+	}
+
+	/** ^(+ ^(* 0 a) ^(+ b c)) */
+	protected Tree tree() {
+		Tree t = node(PLUS, "+");
+		Tree m = node(MULT, "*");
+		m.addChild(node(ZERO, "0"));
+		m.addChild(node(ID, "a"));
+		t.addChild(m);
+		Tree p = node(PLUS, "+2");
+		p.addChild(node(ID, "b"));
+		p.addChild(node(ID, "c"));
+		t.addChild(p);
+		return t;
+	}
+
+	@Test public void testFilterSkipsNodesRulesCantMatch() throws Exception {
+		Tree t = tree();
+		CountingFilter f = new CountingFilter(new CommonTreeNodeStream(t));
+		f.downup(t);
+		assertEquals(2, f.topdownCalls); // only at the two PLUS nodes
+		assertEquals("++2", f.matched.toString());
+		// bottomup has no root types so it ran at all 7 nodes
+		assertEquals(1, f.states.size());
+		assertEquals(1, f.inputs.size());
+	}
+
+	@Test public void testRewriterReusesStream() throws Exception {
+		Tree t = tree();
+		ZeroRewriter r = new ZeroRewriter(new CommonTreeNodeStream(t));
+		t = (Tree)r.downup(t);
+		assertEquals("(+ 0 (+2 b c))", t.toStringTree());
+		assertEquals(1, r.bottomupCalls); // just the MULT node, not the 0 after
+	}
+
+	/** ^(+ a a ... a) with n a's */
+	protected Tree wideTree(int n) {
+		Tree t = node(PLUS, "+");
+		for (int i = 0; i < n; i++) {
+			t.addChild(node(ID, "a"));
+		}
+		return t;
+	}
+
+	@Test public void testFilterStopsWhenCancelled() throws Exception {
+		Tree t = wideTree(20);
+		StoppableFilter f =
+			new StoppableFilter(new CommonTreeNodeStream(t), new RecognizerSharedState());
+		f.cancelAt = 3;
+		boolean thrown = false;
+		try {
+			f.downup(t);
+		}
+		catch (ParseCancelledException pce) {
+			thrown = true;
+		}
+		assertTrue(thrown);
+		assertEquals(3, f.topdownCalls);
+
+		// cancelled before it starts
+		f = new StoppableFilter(new CommonTreeNodeStream(t), new RecognizerSharedState());
+		f.cancel();
+		thrown = false;
+		try {
+			f.downup(t);
+		}
+		catch (ParseCancelledException pce) {
+			thrown = true;
+		}
+		assertTrue(thrown);
+		assertEquals(0, f.topdownCalls);
+	}
+
+	@Test(timeout=10000) public void testFilterStopsAtDeadline() throws Exception {
+		Tree t = wideTree(20);
+		StoppableFilter f =
+			new StoppableFilter(new CommonTreeNodeStream(t), new RecognizerSharedState());
+		f.sleepAt = 2; // the deadline passes while we're at the second node
+		f.setDeadline(100);
+		boolean thrown = false;
+		try {
+			f.downup(t);
+		}
+		catch (ParseCancelledException pce) {
+			thrown = true;
+		}
+		assertTrue(thrown);
+		assertEquals(2, f.topdownCalls);
+	}
+
+	@Test public void testFilterStopsWhenOutOfWork() throws Exception {
+		Tree t = wideTree(20);
+		RecognizerSharedState state = new RecognizerSharedState();
+		state.workBudget = 5;
+		StoppableFilter f = new StoppableFilter(new CommonTreeNodeStream(t), state);
+		boolean thrown = false;
+		try {
+			f.downup(t);
+		}
+		catch (WorkBudgetExceededException wbe) {
+			thrown = true;
+		}
+		assertTrue(thrown);
+		assertEquals(5, f.topdownCalls);
+	}
+
+	@Test public void testGeneratedFilterSkipsNodesRulesCantMatch() throws Exception {
+		String grammar =
+			"grammar T;\n" +
+			"options {output=AST;}\n" +
+			"s : e (';'! e)* ;\n" +
+			"e : a ('+'^ a)* ;\n" +
+			"a : ID | INT ;\n" +
+			"ID : 'a'..'z'+ ;\n" +
+			"INT : '0'..'9'+ ;\n" +
+			"WS : (' '|'\\n') {$channel=HIDDEN;} ;\n";
+		// @init isn't gated, so it shows where each rule is tried
+		String treeGrammar =
+			"tree grammar TP;\n" +
+			"options {tokenVocab=T; ASTLabelType=CommonTree; filter=true;}\n" +
+			"@members {\n" +
+			"public void go() { downup(input.getTreeSource()); }\n" +
+			"}\n" +
+			"topdown\n" +
+			"@init {System.out.println(\"topdown at \"+input.LT(1));}\n" +
+			"    : ^('+' x=ID y=ID) {System.out.println(\"add \"+$x.text+\" \"+$y.text);}\n" +
+			"    ;\n" +
+			"bottomup\n" +
+			"@init {System.out.println(\"bottomup at \"+input.LT(1));}\n" +
+			"    : INT {System.out.println(\"int \"+$INT.text);}\n" +
+			"    ;\n";
+		String found = execTreeParser("T.g", grammar, "TParser", "TP.g",
+									  treeGrammar, "TP", "TLexer", "s", "go",
+									  "1 + x; a + b; c");
+		assertEquals("topdown at +\n" +
+					 "bottomup at 1\n" +
+					 "int 1\n" +
+					 "topdown at +\n" +
+					 "add a b\n", found);
+	}
+
+	@Test public void testFilterRootTypesGenerated() throws Exception {
+		Grammar g = new Grammar(
+			"tree grammar T;\n" +
+			"options {filter=true;}\n" +
+			"topdown : ^(PLUS . .) | mult ;\n" +
+			"mult : ^(MULT . .) ;\n" +
+			"bottomup : ^(ID .*) ;\n"
+		);
+		Tool antlr = newTool();
+		antlr.setOutputDirectory(null); // write to /dev/null
+		CodeGenerator generator = new CodeGenerator(antlr, g, "Java");
+		g.setCodeGenerator(generator);
+		generator.genRecognizer();
+		String code = generator.getRecognizerST().toString();
+		assertTrue(code.indexOf("topdownRootTypes = FIRST_topdown;")>=0);
+		assertTrue(code.indexOf("bottomupRootTypes = FIRST_bottomup;")>=0);
+		long topdown = (1L<<g.getTokenType("PLUS"))|(1L<<g.getTokenType("MULT"));
+		assertTrue(code.indexOf("FIRST_topdown = new BitSet(new long[]{"+
+								String.format("0x%016XL", topdown)+"})")>=0);
+	}
+}
@@ -120,6 +120,17 @@ public class TestTreeIterator {
         assertEquals(expecting, found);
     }
 
+    @Test public void testSubtreeStopsAtItsRoot() {
+        TreeAdaptor adaptor = new CommonTreeAdaptor();
+        TreeWizard wiz = new TreeWizard(adaptor, tokens);
+        CommonTree t = (CommonTree)wiz.create("(A (B C D) (E F))");
+        TreeIterator it = new TreeIterator(t.getChild(0));
+        StringBuffer buf = toString(it);
+        String expecting = "B DOWN C D UP EOF"; // not on to E
+        String found = buf.toString();
+        assertEquals(expecting, found);
+    }
+
     protected static StringBuffer toString(TreeIterator it) {
         StringBuffer buf = new StringBuffer();
         while ( it.hasNext() ) {
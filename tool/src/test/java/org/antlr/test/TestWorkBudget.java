@@ -0,0 +1,81 @@
+/*
+ [The "BSD license"]
+ Copyright (c) 2005-2009 Terence Parr
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+     derived from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.antlr.test;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.DFA;
+import org.antlr.runtime.Parser;
+import org.antlr.runtime.RecognizerSharedState;
+import org.antlr.runtime.WorkBudgetExceededException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestWorkBudget {
+    /** ax predicts 1, ay predicts 2, b predicts 3 */
+    protected DFA newDFA(final Parser parser) {
+        return new DFA() {
+            {
+                recognizer = parser;
+                eot = new short[] {-1,-1,-1,-1,-1};
+                eof = new short[] {-1,-1,-1,-1,-1};
+                min = new char[] {'a','x',0,0,0};
+                max = new char[] {'b','y',0,0,0};
+                accept = new short[] {-1,-1,3,1,2};
+                special = new short[] {-1,-1,-1,-1,-1};
+                transition = new short[][] {{1,2},{3,4},{},{},{}};
+            }
+        };
+    }
+
+    @Test public void testDFAChargesBudget() throws Exception {
+        RecognizerSharedState state = new RecognizerSharedState();
+        DFA dfa = newDFA(new Parser(null, state));
+        state.workBudget = 5;
+        assertEquals(1, dfa.predict(new ANTLRStringStream("ax")));
+        assertEquals(2, state.workBudget); // looked at a, x, and the accept
+        boolean thrown = false;
+        try {
+            dfa.predict(new ANTLRStringStream("ay"));
+        }
+        catch (WorkBudgetExceededException e) {
+            thrown = true;
+            assertEquals(0, e.index); // input was rewound first
+        }
+        assertTrue(thrown);
+    }
+
+    @Test public void testUnlimitedByDefault() throws Exception {
+        RecognizerSharedState state = new RecognizerSharedState();
+        DFA dfa = newDFA(new Parser(null, state));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(3, dfa.predict(new ANTLRStringStream("b")));
+        }
+    }
+}